@@ -0,0 +1,112 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The CentsSeries class stores a sequence of amounts in cents outside the
+ * garbage collected heap, in chunks of direct memory that grow
+ * the same way PriceSeries stores floats.
+ */
+public final class CentsSeries {
+    private static final int CHUNK_SHIFT = PriceSeries.CHUNK_SHIFT;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CHUNK_SIZE = 1 << 10;
+
+    private ByteBuffer[] chunks = new ByteBuffer[8];
+    private int chunkCount = 0;
+    private long size = 0;
+
+    /**
+     * Adds an amount at the end of the series.
+     *
+     * @param cents the amount in cents
+     */
+    public void append(long cents) {
+        int offset = (int) (size & CHUNK_MASK);
+
+        if (offset == 0) {
+            addChunk();
+        } else if (offset << 3 == chunks[chunkCount - 1].capacity()) {
+            growChunk();
+        }
+
+        chunks[chunkCount - 1].putLong(offset << 3, cents);
+        size += 1;
+    }
+
+    /**
+     * Gets the amount at the given position.
+     *
+     * @param index the zero-based position of the amount
+     * @return the amount in cents
+     * @throws IndexOutOfBoundsException if the index is outside the series
+     */
+    public long get(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+
+        return chunks[(int) (index >>> CHUNK_SHIFT)].getLong((int) (index & CHUNK_MASK) << 3);
+    }
+
+    /**
+     * Gets the number of amounts in the series.
+     *
+     * @return the size of the series
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Checks if the series has no amounts.
+     *
+     * @return true if the series is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the memory held by the chunks of the series.
+     *
+     * @return the capacity of every chunk, in bytes
+     */
+    long memoryBytes() {
+        long bytes = 0;
+
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex += 1) {
+            bytes += chunks[chunkIndex].capacity();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Allocates a new chunk of direct memory at the end of the series.
+     * The first chunk starts small, the following ones are full-size.
+     */
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+
+        int capacity = chunkCount == 0 ? INITIAL_CHUNK_SIZE : CHUNK_SIZE;
+        chunks[chunkCount] = ByteBuffer.allocateDirect(capacity << 3).order(ByteOrder.nativeOrder());
+        chunkCount += 1;
+    }
+
+    /**
+     * Doubles the capacity of the last chunk, which is full but still
+     * smaller than the full chunk size.
+     */
+    private void growChunk() {
+        ByteBuffer chunk = chunks[chunkCount - 1];
+        ByteBuffer larger = ByteBuffer.allocateDirect(chunk.capacity() * 2).order(ByteOrder.nativeOrder());
+        larger.put(chunk.duplicate().clear());
+        chunks[chunkCount - 1] = larger.clear();
+    }
+}
@@ -0,0 +1,37 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+/**
+ * The CompensatedSum class adds doubles with Kahan-Neumaier summation.
+ * Along with the running sum it keeps the low-order bits lost by every
+ * addition, so the error no longer grows with the number of values.
+ */
+final class CompensatedSum {
+    private double sum = 0;
+    private double compensation = 0;
+
+    /**
+     * Adds a value to the sum.
+     *
+     * @param value the value to add
+     */
+    void add(double value) {
+        double total = sum + value;
+
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+
+        sum = total;
+    }
+
+    /**
+     * Gets the compensated sum of the values added so far.
+     *
+     * @return the sum
+     */
+    double getValue() {
+        return sum + compensation;
+    }
+}
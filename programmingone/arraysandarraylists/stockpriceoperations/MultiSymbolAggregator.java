@@ -0,0 +1,224 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * The MultiSymbolAggregator class keeps the count, average, maximum and
+ * cumulative sum of the prices of many stock symbols, fed by many threads
+ * at once. Every symbol has its own striped accumulators, so producers never
+ * lock each other, and snapshots are read while producers keep writing.
+ * Prices are rounded to cents as in the cumulative sum operation.
+ */
+public final class MultiSymbolAggregator {
+    private static final ThreadLocal<PriceParser> parsers = ThreadLocal.withInitial(PriceParser::new);
+
+    private final ConcurrentHashMap<String, SymbolAccumulator> symbols = new ConcurrentHashMap<>();
+
+    /**
+     * Records a price of a symbol. NaN prices are ignored.
+     *
+     * @param symbol the stock symbol
+     * @param price  the price of the tick
+     */
+    public void record(String symbol, float price) {
+        if (Float.isNaN(price)) return;
+
+        SymbolAccumulator accumulator = symbols.get(symbol);
+
+        if (accumulator == null) {
+            accumulator = symbols.computeIfAbsent(symbol, key -> new SymbolAccumulator());
+        }
+
+        accumulator.record(price);
+    }
+
+    /**
+     * Records every tick of a file, one symbol,price tick per line, reading the
+     * lines in parallel. Blank lines are skipped, and prices follow the same
+     * rules as the other price files.
+     *
+     * @param path the file of ticks
+     * @throws IOException           if the file cannot be read
+     * @throws NumberFormatException if a tick is invalid
+     */
+    public void read(Path path) throws IOException {
+        try (Stream<String> lines = Files.lines(path, StandardCharsets.UTF_8)) {
+            lines.parallel().forEach(this::recordTick);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Records a symbol,price tick read from a line of a file.
+     *
+     * @param line the line of the tick
+     * @throws NumberFormatException if the tick is invalid
+     */
+    private void recordTick(String line) {
+        int comma = line.indexOf(',');
+
+        if (comma < 0 && line.isBlank()) return;
+
+        String symbol = comma < 0 ? "" : line.substring(0, comma).trim();
+
+        try {
+            if (symbol.isEmpty()) throw new NumberFormatException();
+
+            record(symbol, parsers.get().parsePrice(line, comma + 1, line.length()));
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Invalid tick: " + line.trim());
+        }
+    }
+
+    /**
+     * Gets the statistics of a symbol.
+     *
+     * @param symbol the stock symbol
+     * @return the statistics of the symbol, or null if it has no price
+     */
+    public Snapshot snapshot(String symbol) {
+        SymbolAccumulator accumulator = symbols.get(symbol);
+        return accumulator == null ? null : accumulator.snapshot(symbol);
+    }
+
+    /**
+     * Gets the statistics of every symbol.
+     *
+     * @return the statistics of every symbol, sorted by symbol
+     */
+    public Map<String, Snapshot> snapshotAll() {
+        Map<String, Snapshot> snapshots = new TreeMap<>();
+
+        symbols.forEach((symbol, accumulator) -> snapshots.put(symbol, accumulator.snapshot(symbol)));
+
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Gets the number of symbols with at least one price.
+     *
+     * @return the number of symbols
+     */
+    public int symbolCount() {
+        return symbols.size();
+    }
+
+    /**
+     * The accumulators of a single symbol.
+     */
+    private static class SymbolAccumulator {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumCents = new LongAdder();
+        private final DoubleAccumulator maximum = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        /**
+         * Adds a price to the accumulators.
+         *
+         * @param price the price of the tick
+         */
+        void record(float price) {
+            sumCents.add(PriceCents.toCents(price));
+            maximum.accumulate(price);
+            count.increment();
+        }
+
+        /**
+         * Reads the accumulators. The fields are read one after the other,
+         * so a snapshot taken while producers write may miss the latest ticks
+         * in some of them.
+         *
+         * @param symbol the stock symbol
+         * @return the statistics of the symbol
+         */
+        Snapshot snapshot(String symbol) {
+            long ticks = count.sum();
+            long cents = sumCents.sum();
+            return new Snapshot(symbol, ticks, cents, (float) maximum.get());
+        }
+    }
+
+    /**
+     * The statistics of a symbol at a point in time.
+     */
+    public static final class Snapshot {
+        private final String symbol;
+        private final long count;
+        private final long cumulativeSumCents;
+        private final float maximum;
+
+        Snapshot(String symbol, long count, long cumulativeSumCents, float maximum) {
+            this.symbol = symbol;
+            this.count = count;
+            this.cumulativeSumCents = cumulativeSumCents;
+            this.maximum = maximum;
+        }
+
+        /**
+         * Gets the stock symbol.
+         *
+         * @return the symbol
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Gets the number of prices recorded.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the average of the prices recorded.
+         *
+         * @return the average price, or NaN if no price was recorded
+         */
+        public double getAverage() {
+            return count == 0 ? Double.NaN : cumulativeSumCents / 100.0 / count;
+        }
+
+        /**
+         * Gets the maximum of the prices recorded.
+         *
+         * @return the maximum price
+         */
+        public float getMaximum() {
+            return maximum;
+        }
+
+        /**
+         * Gets the sum of the prices recorded, in cents.
+         *
+         * @return the cumulative sum in cents
+         */
+        public long getCumulativeSumCents() {
+            return cumulativeSumCents;
+        }
+
+        /**
+         * Returns a string representation of the statistics.
+         *
+         * @return a string with the symbol and its statistics
+         */
+        @Override
+        public String toString() {
+            return String.format("%s, count=%d, average=%.2f, maximum=%.2f, cumulative=%.2f",
+                symbol, count, getAverage(), maximum, cumulativeSumCents / 100.0);
+        }
+    }
+}
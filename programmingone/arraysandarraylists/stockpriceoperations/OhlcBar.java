@@ -0,0 +1,111 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+/**
+ * The OhlcBar class holds the open, high, low and close prices and the
+ * volume of the ticks of one time bucket.
+ */
+public final class OhlcBar {
+    private final long resolutionMillis;
+    private final long startMillis;
+    private final float open;
+    private final float high;
+    private final float low;
+    private final float close;
+    private final long volume;
+    private final long tickCount;
+
+    OhlcBar(long resolutionMillis, long startMillis, float open, float high, float low, float close,
+            long volume, long tickCount) {
+        this.resolutionMillis = resolutionMillis;
+        this.startMillis = startMillis;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.tickCount = tickCount;
+    }
+
+    /**
+     * Gets the length of the bucket.
+     *
+     * @return the resolution in milliseconds
+     */
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    /**
+     * Gets the start of the bucket.
+     *
+     * @return the start in milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Gets the price of the first tick.
+     *
+     * @return the open price
+     */
+    public float getOpen() {
+        return open;
+    }
+
+    /**
+     * Gets the maximum price.
+     *
+     * @return the high price
+     */
+    public float getHigh() {
+        return high;
+    }
+
+    /**
+     * Gets the minimum price.
+     *
+     * @return the low price
+     */
+    public float getLow() {
+        return low;
+    }
+
+    /**
+     * Gets the price of the last tick.
+     *
+     * @return the close price
+     */
+    public float getClose() {
+        return close;
+    }
+
+    /**
+     * Gets the sum of the volumes of the ticks.
+     *
+     * @return the volume
+     */
+    public long getVolume() {
+        return volume;
+    }
+
+    /**
+     * Gets the number of ticks in the bucket.
+     *
+     * @return the tick count
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Returns a comma separated representation of the bar.
+     *
+     * @return the resolution, start, open, high, low, close and volume of the bar
+     */
+    @Override
+    public String toString() {
+        return String.format("%d,%d,%.2f,%.2f,%.2f,%.2f,%d",
+            resolutionMillis, startMillis, open, high, low, close, volume);
+    }
+}
@@ -0,0 +1,208 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The OhlcBarAggregator class turns timestamped ticks into OHLC bars at
+ * several resolutions in a single pass. Each resolution keeps the bar of its
+ * current bucket and hands it to the listener as soon as a tick falls into a
+ * later bucket. Ticks older than the current bucket of a resolution are
+ * dropped and counted as late.
+ */
+public final class OhlcBarAggregator {
+    /**
+     * Receives every completed bar.
+     */
+    public interface Listener {
+        /**
+         * Accepts a completed bar.
+         *
+         * @param bar the completed bar
+         */
+        void onBar(OhlcBar bar);
+    }
+
+    private final long[] resolutions;
+    private final Listener listener;
+    private final long[] starts;
+    private final float[] opens;
+    private final float[] highs;
+    private final float[] lows;
+    private final float[] closes;
+    private final long[] volumes;
+    private final long[] tickCounts;
+    private long lateTicks = 0;
+
+    /**
+     * Creates an aggregator.
+     *
+     * @param listener    the receiver of the completed bars
+     * @param resolutions the lengths of the buckets in milliseconds
+     * @throws IllegalArgumentException if there is no resolution or one is not positive
+     */
+    public OhlcBarAggregator(Listener listener, long... resolutions) {
+        if (resolutions.length == 0) {
+            throw new IllegalArgumentException("At least one resolution is required.");
+        }
+
+        for (long resolution : resolutions) {
+            if (resolution <= 0) {
+                throw new IllegalArgumentException("Resolutions must be positive.");
+            }
+        }
+
+        this.resolutions = resolutions.clone();
+        this.listener = listener;
+        starts = new long[resolutions.length];
+        opens = new float[resolutions.length];
+        highs = new float[resolutions.length];
+        lows = new float[resolutions.length];
+        closes = new float[resolutions.length];
+        volumes = new long[resolutions.length];
+        tickCounts = new long[resolutions.length];
+    }
+
+    /**
+     * Adds a tick to the bar of every resolution. NaN prices are ignored.
+     *
+     * @param timestampMillis the time of the tick in milliseconds since the epoch
+     * @param price           the price of the tick
+     * @param volume          the volume of the tick
+     */
+    public void add(long timestampMillis, float price, long volume) {
+        if (Float.isNaN(price)) return;
+
+        for (int index = 0; index < resolutions.length; index += 1) {
+            long start = timestampMillis - Math.floorMod(timestampMillis, resolutions[index]);
+
+            if (tickCounts[index] > 0 && start < starts[index]) {
+                lateTicks += 1;
+                continue;
+            }
+
+            if (tickCounts[index] > 0 && start > starts[index]) {
+                emit(index);
+            }
+
+            if (tickCounts[index] == 0) {
+                starts[index] = start;
+                opens[index] = price;
+                highs[index] = price;
+                lows[index] = price;
+            }
+
+            highs[index] = PriceKernels.greater(highs[index], price);
+            lows[index] = Math.min(lows[index], price);
+            closes[index] = price;
+            volumes[index] += volume;
+            tickCounts[index] += 1;
+        }
+    }
+
+    /**
+     * Emits the bars still open, as at the end of the input.
+     */
+    public void flush() {
+        for (int index = 0; index < resolutions.length; index += 1) {
+            if (tickCounts[index] > 0) {
+                emit(index);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of ticks dropped because their bucket was already emitted,
+     * counted once per resolution.
+     *
+     * @return the number of late ticks
+     */
+    public long getLateTicks() {
+        return lateTicks;
+    }
+
+    /**
+     * Reads a file of ticks, one per line as {@code timestamp,price[,volume]},
+     * and aggregates them.
+     *
+     * @param path the file to read
+     * @throws IOException           if the file cannot be read
+     * @throws NumberFormatException if a line is not a valid tick
+     */
+    public void read(Path path) throws IOException {
+        PriceParser parser = new PriceParser();
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            String line;
+            long lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber += 1;
+
+                if (line.isBlank()) continue;
+
+                int firstComma = line.indexOf(',');
+                int secondComma = firstComma < 0 ? -1 : line.indexOf(',', firstComma + 1);
+
+                if (firstComma < 0) {
+                    throw new NumberFormatException(String.format("Invalid tick at line %d of %s", lineNumber, path));
+                }
+
+                try {
+                    long timestamp = Long.parseLong(line, 0, firstComma, 10);
+                    int priceEnd = secondComma < 0 ? line.length() : secondComma;
+                    float price = parser.parsePrice(line, firstComma + 1, priceEnd);
+                    long volume = secondComma < 0 ? 0 : Long.parseLong(line.substring(secondComma + 1).trim());
+
+                    add(timestamp, price, volume);
+                } catch (NumberFormatException e) {
+                    throw new NumberFormatException(String.format("Invalid tick at line %d of %s", lineNumber, path));
+                }
+            }
+        }
+
+        flush();
+    }
+
+    /**
+     * Parses a resolution such as 500ms, 1s, 5m, 1h or 1d.
+     *
+     * @param text the resolution to parse
+     * @return the resolution in milliseconds
+     * @throws NumberFormatException if the text is not a valid resolution
+     */
+    public static long parseResolution(String text) {
+        String trimmed = text.trim();
+        int unitStart = 0;
+
+        while (unitStart < trimmed.length() && Character.isDigit(trimmed.charAt(unitStart))) {
+            unitStart += 1;
+        }
+
+        long amount = Long.parseLong(trimmed, 0, unitStart, 10);
+
+        return switch (trimmed.substring(unitStart)) {
+            case "ms" -> amount;
+            case "s" -> amount * 1_000;
+            case "m" -> amount * 60_000;
+            case "h" -> amount * 3_600_000;
+            case "d" -> amount * 86_400_000;
+            default -> throw new NumberFormatException("Invalid resolution: " + text);
+        };
+    }
+
+    /**
+     * Hands the current bar of a resolution to the listener and clears it.
+     *
+     * @param index the position of the resolution
+     */
+    private void emit(int index) {
+        listener.onBar(new OhlcBar(resolutions[index], starts[index], opens[index], highs[index],
+            lows[index], closes[index], volumes[index], tickCounts[index]));
+        volumes[index] = 0;
+        tickCounts[index] = 0;
+    }
+}
@@ -0,0 +1,187 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The ParallelAggregator class computes the sum and the maximum of large
+ * price series on all cores. The series is split into its chunks with
+ * fork/join, each chunk produces a partial result, and the partial results
+ * are combined in chunk order. Since the splitting only depends on the size
+ * of the series, the result is the same for every thread count, and the
+ * same as the sequential path, which combines the chunks the same way.
+ * <p>
+ * The size from which the parallel path is used is read from the
+ * {@code stockprice.parallelThreshold} system property, and the number of
+ * threads from {@code stockprice.parallelism}.
+ * <p>
+ * Sums are compensated by default, which keeps averages of hundreds of
+ * millions of prices accurate. Setting the {@code stockprice.summation}
+ * system property to {@code naive} restores plain float addition.
+ */
+final class ParallelAggregator {
+    static final String THRESHOLD_PROPERTY = "stockprice.parallelThreshold";
+    static final String PARALLELISM_PROPERTY = "stockprice.parallelism";
+    static final String SUMMATION_PROPERTY = "stockprice.summation";
+    private static final long DEFAULT_THRESHOLD = 1L << 22;
+
+    private static final long threshold = Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+    private static final boolean isCompensated = !"naive".equals(System.getProperty(SUMMATION_PROPERTY));
+    private static final ForkJoinPool pool = new ForkJoinPool(
+        Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+
+    private ParallelAggregator() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Checks if a series is large enough to be aggregated in parallel.
+     *
+     * @param series the series to check
+     * @return true if the series should use the parallel path, false otherwise
+     */
+    static boolean isWorthParallel(PriceSeries series) {
+        return series.size() >= threshold && series.chunkCount() > 1;
+    }
+
+    /**
+     * Calculates the sum of a series, in parallel if it is large enough.
+     * Every chunk is summed on its own and the chunk sums are added in order,
+     * so both paths give the same result.
+     *
+     * @param series the series of prices
+     * @return the sum of the prices
+     */
+    static double sum(PriceSeries series) {
+        double[] partials = new double[series.chunkCount()];
+
+        if (isWorthParallel(series)) {
+            pool.invoke(new SumTask(series, partials, 0, partials.length));
+        } else {
+            for (int chunkIndex = 0; chunkIndex < partials.length; chunkIndex += 1) {
+                partials[chunkIndex] = sumChunk(series, chunkIndex);
+            }
+        }
+
+        if (isCompensated) {
+            CompensatedSum sum = new CompensatedSum();
+
+            for (double partial : partials) {
+                sum.add(partial);
+            }
+
+            return sum.getValue();
+        }
+
+        float sum = 0;
+
+        for (double partial : partials) {
+            sum += (float) partial;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Finds the maximum of a series in parallel.
+     *
+     * @param series the series of prices
+     * @return the maximum price
+     */
+    static float max(PriceSeries series) {
+        float[] partials = new float[series.chunkCount()];
+
+        pool.invoke(new MaxTask(series, partials, 0, partials.length));
+
+        float greater = partials[0];
+
+        for (float partial : partials) {
+            if (partial > greater) {
+                greater = partial;
+            }
+        }
+
+        return greater;
+    }
+
+    /**
+     * Sums a chunk with the summation of the current mode.
+     *
+     * @param series     the series of prices
+     * @param chunkIndex the position of the chunk
+     * @return the sum of the chunk
+     */
+    private static double sumChunk(PriceSeries series, int chunkIndex) {
+        ByteBuffer chunk = series.chunk(chunkIndex);
+        int length = series.chunkLength(chunkIndex);
+
+        if (isCompensated) {
+            return PriceKernels.get().compensatedSum(chunk, length);
+        }
+
+        return PriceKernels.get().sum(chunk, length);
+    }
+
+    /**
+     * Splits a range of chunks until each task handles a single chunk,
+     * storing the sum of every chunk at its index.
+     */
+    @SuppressWarnings("serial")
+    private static class SumTask extends RecursiveAction {
+        private final PriceSeries series;
+        private final double[] partials;
+        private final int from;
+        private final int to;
+
+        SumTask(PriceSeries series, double[] partials, int from, int to) {
+            this.series = series;
+            this.partials = partials;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SumTask(series, partials, from, middle), new SumTask(series, partials, middle, to));
+                return;
+            }
+
+            partials[from] = sumChunk(series, from);
+        }
+    }
+
+    /**
+     * Splits a range of chunks until each task handles a single chunk,
+     * storing the maximum of every chunk at its index.
+     */
+    @SuppressWarnings("serial")
+    private static class MaxTask extends RecursiveAction {
+        private final PriceSeries series;
+        private final float[] partials;
+        private final int from;
+        private final int to;
+
+        MaxTask(PriceSeries series, float[] partials, int from, int to) {
+            this.series = series;
+            this.partials = partials;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MaxTask(series, partials, from, middle), new MaxTask(series, partials, middle, to));
+                return;
+            }
+
+            ByteBuffer chunk = series.chunk(from);
+            float initial = from == 0 ? chunk.getFloat(0) : Float.NEGATIVE_INFINITY;
+            partials[from] = PriceKernels.get().max(chunk, series.chunkLength(from), initial);
+        }
+    }
+}
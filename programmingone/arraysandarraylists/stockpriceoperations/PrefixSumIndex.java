@@ -0,0 +1,79 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+/**
+ * The PrefixSumIndex class answers sum and average queries over any range
+ * of a price series in constant time. It keeps the cumulative sum in cents
+ * at every position, so the sum of a range is the difference between two
+ * cumulative sums. Prices are rounded to cents as in the cumulative sum operation.
+ */
+public final class PrefixSumIndex {
+    private final CentsSeries cumulativeSums;
+
+    /**
+     * Creates an index over the cumulative sums of a series.
+     *
+     * @param cumulativeSums the cumulative sum in cents at each position
+     */
+    public PrefixSumIndex(CentsSeries cumulativeSums) {
+        this.cumulativeSums = cumulativeSums;
+    }
+
+    /**
+     * Creates an index over a series of prices.
+     *
+     * @param series the series of prices
+     * @return the index of the series
+     */
+    public static PrefixSumIndex of(PriceSeries series) {
+        return new PrefixSumIndex(PriceCents.cumulativeSum(series));
+    }
+
+    /**
+     * Gets the number of prices covered by the index.
+     *
+     * @return the size of the indexed series
+     */
+    public long size() {
+        return cumulativeSums.size();
+    }
+
+    /**
+     * Calculates the sum of the prices between two positions, in cents.
+     *
+     * @param from the zero-based position of the first price, inclusive
+     * @param to   the zero-based position of the last price, inclusive
+     * @return the sum in cents
+     * @throws IllegalArgumentException  if from is after to
+     * @throws IndexOutOfBoundsException if a position is outside the series
+     */
+    public long rangeSumCents(long from, long to) {
+        if (from > to) {
+            throw new IllegalArgumentException("The first position must not be after the last position.");
+        }
+
+        long before = from == 0 ? 0 : cumulativeSums.get(from - 1);
+        return cumulativeSums.get(to) - before;
+    }
+
+    /**
+     * Calculates the sum of the prices between two positions.
+     *
+     * @param from the zero-based position of the first price, inclusive
+     * @param to   the zero-based position of the last price, inclusive
+     * @return the sum as a float
+     */
+    public float rangeSum(long from, long to) {
+        return PriceCents.toFloat(rangeSumCents(from, to));
+    }
+
+    /**
+     * Calculates the average of the prices between two positions.
+     *
+     * @param from the zero-based position of the first price, inclusive
+     * @param to   the zero-based position of the last price, inclusive
+     * @return the average price
+     */
+    public double rangeAverage(long from, long to) {
+        return rangeSumCents(from, to) / 100.0 / (to - from + 1);
+    }
+}
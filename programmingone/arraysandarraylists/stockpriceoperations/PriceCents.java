@@ -0,0 +1,90 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The PriceCents class represents prices as a whole number of cents stored
+ * in a long. Converting a float to cents gives the same result as rounding
+ * its decimal representation to 2 decimal places with HALF_UP, which is how
+ * the console operations round, but without creating any object.
+ * Sums of cents are exact, while sums of floats drift once they are large.
+ */
+public final class PriceCents {
+    private PriceCents() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Converts a price to cents, rounding half up like
+     * {@code new BigDecimal(Float.toString(price)).setScale(2, RoundingMode.HALF_UP)}.
+     * The shortest decimal that reads back as the price is found with up to
+     * 3 decimal places, breaking ties to even the way Float.toString does.
+     * The result matches for prices below 10 million, which Float.toString prints
+     * in plain notation.
+     *
+     * @param price the price to convert
+     * @return the price in cents
+     */
+    public static long toCents(float price) {
+        if (price < 0) return -toCents(-price);
+
+        for (int decimals = 0, scale = 1; decimals <= 3; decimals += 1, scale *= 10) {
+            long digits = (long) Math.rint(price * (double) scale);
+
+            if ((float) (digits / (double) scale) == price) {
+                return decimals == 3 ? (digits + 5) / 10 : digits * (100 / scale);
+            }
+        }
+
+        return Math.round(price * 100.0);
+    }
+
+    /**
+     * Converts cents back to the nearest float price.
+     *
+     * @param cents the price in cents
+     * @return the price as a float
+     */
+    public static float toFloat(long cents) {
+        return (float) (cents / 100.0);
+    }
+
+    /**
+     * Formats cents as an exact decimal amount with 2 decimal places,
+     * without going through a float.
+     *
+     * @param cents the amount in cents
+     * @return the amount, for example "-1234.05"
+     */
+    public static String format(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        return String.format("%s%d.%02d", sign, Math.abs(cents / 100), Math.abs(cents % 100));
+    }
+
+    /**
+     * Computes the cumulative sum of a series of prices rounded to cents.
+     * Every price is rounded half up to cents before being added,
+     * and no object is created per price. The totals are exact, so they
+     * differ from the old float running sum once it grew past what a float
+     * holds to the cent, around 65,536, even for prices with 2 decimals.
+     *
+     * @param values the series of prices
+     * @return a series with the cumulative sum in cents at each position
+     */
+    public static CentsSeries cumulativeSum(PriceSeries values) {
+        CentsSeries cumulativeList = new CentsSeries();
+        long sum = 0;
+
+        for (int chunkIndex = 0; chunkIndex < values.chunkCount(); chunkIndex += 1) {
+            ByteBuffer chunk = values.chunk(chunkIndex);
+            int length = values.chunkLength(chunkIndex);
+
+            for (int index = 0; index < length; index += 1) {
+                sum += toCents(chunk.getFloat(index << 2));
+                cumulativeList.append(sum);
+            }
+        }
+
+        return cumulativeList;
+    }
+}
@@ -0,0 +1,103 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The PriceFileReader class loads stock prices from comma or line separated
+ * text files. The file is memory-mapped in windows and parsed straight from
+ * the mapped bytes in a single pass, so no String is created per price.
+ */
+public final class PriceFileReader {
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private PriceFileReader() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Parses every price of a file and hands it to a sink.
+     *
+     * @param path the file to read
+     * @param sink the receiver of the parsed prices
+     * @throws IOException           if the file cannot be read
+     * @throws NumberFormatException if the file contains a non-float value
+     */
+    static void read(Path path, PriceParser.Sink sink) throws IOException {
+        parse(map(path), path, sink);
+    }
+
+    /**
+     * Maps a whole file as consecutive read-only windows.
+     *
+     * @param path the file to map
+     * @return the windows of the file, in order
+     * @throws IOException if the file cannot be mapped
+     */
+    static MappedByteBuffer[] map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+
+            for (int windowIndex = 0; windowIndex < windows.length; windowIndex += 1) {
+                long offset = windowIndex * WINDOW_SIZE;
+                windows[windowIndex] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(WINDOW_SIZE, size - offset));
+            }
+
+            return windows;
+        }
+    }
+
+    /**
+     * Parses every price of the mapped windows of a file and hands it to a sink.
+     *
+     * @param windows the windows of the file, in order
+     * @param path    the file being read, for error messages
+     * @param sink    the receiver of the parsed prices
+     * @throws NumberFormatException if the file contains a non-float value
+     */
+    static void parse(ByteBuffer[] windows, Path path, PriceParser.Sink sink) {
+        PriceParser parser = new PriceParser();
+
+        for (ByteBuffer window : windows) {
+            if (!parser.feed(window.duplicate(), sink)) {
+                throw invalidPrice(path, parser);
+            }
+        }
+
+        if (!parser.finish(sink)) {
+            throw invalidPrice(path, parser);
+        }
+    }
+
+    /**
+     * Reads every price of a file into a new series.
+     *
+     * @param path the file to read
+     * @return a series with the prices in file order
+     * @throws IOException           if the file cannot be read
+     * @throws NumberFormatException if the file contains a non-float value
+     */
+    public static PriceSeries readSeries(Path path) throws IOException {
+        PriceSeries series = new PriceSeries();
+        read(path, series::append);
+        return series;
+    }
+
+    /**
+     * Builds the exception thrown when a file contains an invalid price.
+     *
+     * @param path   the file being read
+     * @param parser the parser that found the error
+     * @return the exception describing the error
+     */
+    private static NumberFormatException invalidPrice(Path path, PriceParser parser) {
+        return new NumberFormatException(
+            String.format("Invalid price at byte %d of %s", parser.getErrorPosition(), path));
+    }
+}
@@ -0,0 +1,304 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The PriceHistogram class counts how many times every price occurs in a
+ * series. Prices are kept in an open-addressing hash table of primitive
+ * arrays, so counting a price never boxes it and every lookup takes constant
+ * time. As with the == comparison used by the occurrence operation,
+ * 0.0 and -0.0 are the same price and NaN never occurs. The table is
+ * limited to MAX_DISTINCT_COUNT different prices, 2^29.
+ */
+public final class PriceHistogram {
+    static final int MAX_DISTINCT_COUNT = 1 << 29;
+    private static final int EMPTY = Float.floatToRawIntBits(Float.NaN);
+
+    private int[] keys;
+    private long[] counts;
+    private int distinctCount = 0;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public PriceHistogram() {
+        keys = new int[16];
+        counts = new long[16];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Creates the histogram of a series.
+     *
+     * @param series the series of prices
+     * @return the histogram of the series
+     * @throws IllegalStateException if the series has more than MAX_DISTINCT_COUNT different prices
+     */
+    public static PriceHistogram of(PriceSeries series) {
+        PriceHistogram histogram = new PriceHistogram();
+
+        for (int chunkIndex = 0; chunkIndex < series.chunkCount(); chunkIndex += 1) {
+            ByteBuffer chunk = series.chunk(chunkIndex);
+            int length = series.chunkLength(chunkIndex);
+
+            for (int index = 0; index < length; index += 1) {
+                histogram.add(chunk.getFloat(index << 2));
+            }
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Counts one more occurrence of a price.
+     *
+     * @param price the price to count
+     * @throws IllegalStateException if the price is new and the histogram already holds MAX_DISTINCT_COUNT prices
+     */
+    public void add(float price) {
+        add(price, 1);
+    }
+
+    /**
+     * Counts more occurrences of a price.
+     *
+     * @param price       the price to count
+     * @param occurrences the number of occurrences to add
+     * @throws IllegalStateException if the price is new and the histogram already holds MAX_DISTINCT_COUNT prices
+     */
+    public void add(float price, long occurrences) {
+        if (Float.isNaN(price)) return;
+
+        int key = toKey(price);
+        int slot = findSlot(keys, key);
+
+        if (keys[slot] == EMPTY) {
+            if (distinctCount == MAX_DISTINCT_COUNT) {
+                throw new IllegalStateException("A price histogram holds at most " + MAX_DISTINCT_COUNT
+                    + " different prices.");
+            }
+
+            keys[slot] = key;
+            distinctCount += 1;
+
+            if (distinctCount * 2 > keys.length) {
+                counts[slot] = occurrences;
+                grow();
+                return;
+            }
+        }
+
+        counts[slot] += occurrences;
+    }
+
+    /**
+     * Adds every occurrence counted by another histogram.
+     *
+     * @param other the histogram to merge into this one
+     */
+    public void merge(PriceHistogram other) {
+        for (int slot = 0; slot < other.keys.length; slot += 1) {
+            if (other.keys[slot] != EMPTY) {
+                add(Float.intBitsToFloat(other.keys[slot]), other.counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of occurrences of a price.
+     *
+     * @param price the price to look up
+     * @return the number of occurrences
+     */
+    public long count(float price) {
+        if (Float.isNaN(price)) return 0;
+
+        int slot = findSlot(keys, toKey(price));
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    /**
+     * Gets the number of different prices counted.
+     *
+     * @return the number of distinct prices
+     */
+    public int distinctCount() {
+        return distinctCount;
+    }
+
+    /**
+     * Finds the most frequent prices, the most frequent first.
+     * Prices with the same count are ordered from the lowest price.
+     *
+     * @param k the maximum number of prices to return
+     * @return up to k entries with a price and its count
+     */
+    public Entry[] topK(int k) {
+        int size = Math.min(k, distinctCount);
+        int[] heap = new int[size];
+        int heapSize = 0;
+
+        for (int slot = 0; slot < keys.length && size > 0; slot += 1) {
+            if (keys[slot] == EMPTY) continue;
+
+            if (heapSize < size) {
+                heap[heapSize] = slot;
+                heapSize += 1;
+                siftUp(heap, heapSize - 1);
+            } else if (isLess(heap[0], slot)) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        Entry[] entries = new Entry[heapSize];
+
+        for (int index = heapSize - 1; index >= 0; index -= 1) {
+            int slot = heap[0];
+            entries[index] = new Entry(Float.intBitsToFloat(keys[slot]), counts[slot]);
+            heap[0] = heap[index];
+            siftDown(heap, index);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Checks if the price at a slot ranks below the price at another slot.
+     *
+     * @param first  the first slot
+     * @param second the second slot
+     * @return true if the first slot ranks below the second, false otherwise
+     */
+    private boolean isLess(int first, int second) {
+        if (counts[first] != counts[second]) return counts[first] < counts[second];
+
+        return Float.intBitsToFloat(keys[first]) > Float.intBitsToFloat(keys[second]);
+    }
+
+    /**
+     * Moves a slot up the min-heap until its parent ranks below it.
+     *
+     * @param heap  the heap of slots
+     * @param index the position of the slot to move
+     */
+    private void siftUp(int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+
+            if (!isLess(heap[index], heap[parent])) return;
+
+            int swap = heap[index];
+            heap[index] = heap[parent];
+            heap[parent] = swap;
+            index = parent;
+        }
+    }
+
+    /**
+     * Moves the root of the min-heap down until its children rank above it.
+     *
+     * @param heap     the heap of slots
+     * @param heapSize the number of slots in the heap
+     */
+    private void siftDown(int[] heap, int heapSize) {
+        int index = 0;
+
+        while (true) {
+            int smallest = index;
+            int left = (index << 1) + 1;
+            int right = left + 1;
+
+            if (left < heapSize && isLess(heap[left], heap[smallest])) smallest = left;
+            if (right < heapSize && isLess(heap[right], heap[smallest])) smallest = right;
+            if (smallest == index) return;
+
+            int swap = heap[index];
+            heap[index] = heap[smallest];
+            heap[smallest] = swap;
+            index = smallest;
+        }
+    }
+
+    /**
+     * Doubles the size of the table and places every price again.
+     * The table never grows past 2^30 slots, since it is kept at most half full.
+     */
+    private void grow() {
+        int[] newKeys = new int[keys.length << 1];
+        long[] newCounts = new long[counts.length << 1];
+        Arrays.fill(newKeys, EMPTY);
+
+        for (int slot = 0; slot < keys.length; slot += 1) {
+            if (keys[slot] == EMPTY) continue;
+
+            int newSlot = findSlot(newKeys, keys[slot]);
+            newKeys[newSlot] = keys[slot];
+            newCounts[newSlot] = counts[slot];
+        }
+
+        keys = newKeys;
+        counts = newCounts;
+    }
+
+    /**
+     * Converts a price to its key, treating -0.0 as 0.0.
+     *
+     * @param price the price to convert
+     * @return the key of the price
+     */
+    private static int toKey(float price) {
+        return Float.floatToRawIntBits(price == 0 ? 0f : price);
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it belongs.
+     *
+     * @param table the table of keys
+     * @param key   the key to look for
+     * @return the slot of the key
+     */
+    private static int findSlot(int[] table, int key) {
+        int mask = table.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * A price together with the number of times it occurs.
+     */
+    public static final class Entry {
+        private final float price;
+        private final long count;
+
+        Entry(float price, long count) {
+            this.price = price;
+            this.count = count;
+        }
+
+        /**
+         * Gets the price.
+         *
+         * @return the price
+         */
+        public float getPrice() {
+            return price;
+        }
+
+        /**
+         * Gets the number of occurrences of the price.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * The PriceIngestionPipeline class reads every price file of a directory
+ * concurrently and merges them into global aggregates. Reader threads map
+ * files and load their pages, parser threads turn each file into a partial
+ * aggregate, and the calling thread merges the partial aggregates. The stages
+ * are linked by bounded queues, so readers wait when parsers fall behind.
+ * The number of files in flight is bounded too, not their size: a queued
+ * file is mapped rather than copied to the heap, but its pages stay resident
+ * until the operating system needs the memory back.
+ * <p>
+ * Files are merged in name order as soon as every file before them is
+ * merged, and each partial aggregate is dropped once merged: the cumulative
+ * total of every file includes the files whose names come before it, and the
+ * global sums are combined in the same order whatever the thread counts. A file that cannot
+ * be read or parsed is reported and left out of the aggregates. Any other
+ * failure of a worker stops the pipeline and is thrown to the caller.
+ */
+public final class PriceIngestionPipeline {
+    private final int readerThreads;
+    private final int parserThreads;
+    private final int queueCapacity;
+
+    /**
+     * The mapped windows of a file waiting to be parsed.
+     */
+    private static class FileContent {
+        private final int fileIndex;
+        private final Path path;
+        private final ByteBuffer[] windows;
+        private final String error;
+
+        FileContent(int fileIndex, Path path, ByteBuffer[] windows, String error) {
+            this.fileIndex = fileIndex;
+            this.path = path;
+            this.windows = windows;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The aggregates of a single file.
+     */
+    private static class FilePartial {
+        private final int fileIndex;
+        private final PriceHistogram histogram = new PriceHistogram();
+        private final QuantileSketch sketch = new QuantileSketch();
+        private final CompensatedSum sum = new CompensatedSum();
+        private long count = 0;
+        private long totalCents = 0;
+        private float maximum = Float.NaN;
+        private String error;
+
+        FilePartial(int fileIndex) {
+            this.fileIndex = fileIndex;
+        }
+
+        void accept(float price) {
+            histogram.add(price);
+            sketch.add(price);
+            sum.add(price);
+            count += 1;
+            totalCents += PriceCents.toCents(price);
+            maximum = PriceKernels.greater(maximum, price);
+        }
+    }
+
+    private static final FileContent END_OF_FILES = new FileContent(-1, null, null, null);
+    private static final FilePartial WORKER_FAILED = new FilePartial(-1);
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param readerThreads the number of threads reading files
+     * @param parserThreads the number of threads parsing files
+     * @param queueCapacity the maximum number of files waiting between two stages
+     * @throws IllegalArgumentException if a number is not positive
+     */
+    public PriceIngestionPipeline(int readerThreads, int parserThreads, int queueCapacity) {
+        if (readerThreads <= 0 || parserThreads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("The thread counts and the queue capacity must be positive.");
+        }
+
+        this.readerThreads = readerThreads;
+        this.parserThreads = parserThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Reads and merges every regular file of a directory.
+     *
+     * @param directory the directory of price files
+     * @return the merged aggregates
+     * @throws IOException          if the directory cannot be listed
+     * @throws InterruptedException if interrupted while waiting for the files
+     * @throws ExecutionException   if a reader or parser thread failed
+     */
+    public Result run(Path directory) throws IOException, InterruptedException, ExecutionException {
+        List<Path> paths;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        BlockingQueue<FileContent> contents = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<FilePartial> partials = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger nextFile = new AtomicInteger();
+        AtomicInteger runningReaders = new AtomicInteger(readerThreads);
+        Semaphore filesInFlight = new Semaphore(readerThreads + parserThreads + 2 * queueCapacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(readerThreads + parserThreads);
+
+        try {
+            for (int thread = 0; thread < readerThreads; thread += 1) {
+                executor.execute(() -> runWorker(
+                    () -> readFiles(paths, nextFile, runningReaders, filesInFlight, contents), failure, partials));
+            }
+
+            for (int thread = 0; thread < parserThreads; thread += 1) {
+                executor.execute(() -> runWorker(() -> parseFiles(contents, partials), failure, partials));
+            }
+
+            Merger merger = new Merger();
+            Map<Integer, FilePartial> waiting = new HashMap<>();
+
+            while (merger.files.size() < paths.size()) {
+                FilePartial partial = partials.take();
+
+                if (partial == WORKER_FAILED) {
+                    throw new ExecutionException("An ingestion worker failed", failure.get());
+                }
+
+                waiting.put(partial.fileIndex, partial);
+
+                while ((partial = waiting.remove(merger.files.size())) != null) {
+                    merger.merge(paths.get(partial.fileIndex), partial);
+                    filesInFlight.release();
+                }
+            }
+
+            return merger.toResult();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the loop of a worker. A failure the loop does not handle itself is
+     * kept for the caller, which is woken up by a WORKER_FAILED partial.
+     *
+     * @param loop     the loop of the worker
+     * @param failure  the first failure of any worker
+     * @param partials the queue of aggregates waiting to be merged
+     */
+    private static void runWorker(Runnable loop, AtomicReference<Throwable> failure,
+            BlockingQueue<FilePartial> partials) {
+        try {
+            loop.run();
+        } catch (RuntimeException | Error e) {
+            if (failure.compareAndSet(null, e)) {
+                try {
+                    partials.put(WORKER_FAILED);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps files and loads their pages until none is left, then tells the parsers once the last reader is done.
+     * A file is only taken once it fits in the files in flight, whose permits are
+     * given back when the file is merged.
+     *
+     * @param paths          the files to read
+     * @param nextFile       the position of the next file to read
+     * @param runningReaders the number of readers still reading
+     * @param filesInFlight  the permits of the files read but not merged yet
+     * @param contents       the queue of files waiting to be parsed
+     */
+    private void readFiles(List<Path> paths, AtomicInteger nextFile, AtomicInteger runningReaders,
+            Semaphore filesInFlight, BlockingQueue<FileContent> contents) {
+        try {
+            while (true) {
+                filesInFlight.acquire();
+                int fileIndex = nextFile.getAndIncrement();
+
+                if (fileIndex >= paths.size()) {
+                    filesInFlight.release();
+                    break;
+                }
+
+                Path path = paths.get(fileIndex);
+                FileContent content;
+
+                try {
+                    MappedByteBuffer[] windows = PriceFileReader.map(path);
+
+                    for (MappedByteBuffer window : windows) {
+                        window.load();
+                    }
+
+                    content = new FileContent(fileIndex, path, windows, null);
+                } catch (IOException e) {
+                    content = new FileContent(fileIndex, path, null, "The file could not be read: " + e.getMessage());
+                }
+
+                contents.put(content);
+            }
+
+            if (runningReaders.decrementAndGet() == 0) {
+                for (int thread = 0; thread < parserThreads; thread += 1) {
+                    contents.put(END_OF_FILES);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parses files until the readers are done.
+     *
+     * @param contents the queue of files waiting to be parsed
+     * @param partials the queue of aggregates waiting to be merged
+     */
+    private static void parseFiles(BlockingQueue<FileContent> contents, BlockingQueue<FilePartial> partials) {
+        try {
+            FileContent content;
+
+            while ((content = contents.take()) != END_OF_FILES) {
+                partials.put(parse(content));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parses the content of a file into its aggregates.
+     *
+     * @param content the content of the file
+     * @return the aggregates of the file, or an error
+     */
+    private static FilePartial parse(FileContent content) {
+        if (content.error != null) {
+            return failedPartial(content.fileIndex, content.error);
+        }
+
+        FilePartial partial = new FilePartial(content.fileIndex);
+
+        try {
+            PriceFileReader.parse(content.windows, content.path, partial::accept);
+        } catch (NumberFormatException e) {
+            return failedPartial(content.fileIndex, e.getMessage());
+        }
+
+        return partial;
+    }
+
+    /**
+     * Creates the aggregates of a file that was left out.
+     *
+     * @param fileIndex the position of the file
+     * @param error     the reason why the file was left out
+     * @return aggregates with no price and the error
+     */
+    private static FilePartial failedPartial(int fileIndex, String error) {
+        FilePartial partial = new FilePartial(fileIndex);
+        partial.error = error;
+        return partial;
+    }
+
+    /**
+     * The aggregates of the files merged so far, in name order.
+     */
+    private static class Merger {
+        private final PriceHistogram histogram = new PriceHistogram();
+        private final QuantileSketch sketch = new QuantileSketch();
+        private final CompensatedSum sum = new CompensatedSum();
+        private final List<FileSummary> files = new ArrayList<>();
+        private long count = 0;
+        private long cumulativeCents = 0;
+        private float maximum = Float.NaN;
+
+        void merge(Path path, FilePartial partial) {
+            if (partial.error != null) {
+                files.add(new FileSummary(path, 0, 0, cumulativeCents, partial.error));
+                return;
+            }
+
+            histogram.merge(partial.histogram);
+            sketch.merge(partial.sketch);
+            sum.add(partial.sum.getValue());
+            count += partial.count;
+            cumulativeCents += partial.totalCents;
+            maximum = PriceKernels.greater(maximum, partial.maximum);
+            files.add(new FileSummary(path, partial.count, partial.totalCents, cumulativeCents, null));
+        }
+
+        Result toResult() {
+            float average = count == 0 ? Float.NaN : (float) (sum.getValue() / count);
+            return new Result(files, count, average, maximum, cumulativeCents, histogram, sketch);
+        }
+    }
+
+    /**
+     * The aggregates of a single file, as merged by the pipeline.
+     */
+    public static final class FileSummary {
+        private final Path path;
+        private final long count;
+        private final long totalCents;
+        private final long cumulativeCents;
+        private final String error;
+
+        FileSummary(Path path, long count, long totalCents, long cumulativeCents, String error) {
+            this.path = path;
+            this.count = count;
+            this.totalCents = totalCents;
+            this.cumulativeCents = cumulativeCents;
+            this.error = error;
+        }
+
+        /**
+         * Gets the file.
+         *
+         * @return the path of the file
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the number of prices of the file.
+         *
+         * @return the number of prices
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the total of the prices of the file, each rounded to cents.
+         *
+         * @return the total in cents
+         */
+        public long getTotalCents() {
+            return totalCents;
+        }
+
+        /**
+         * Gets the total of the prices of the file and of every file before it.
+         *
+         * @return the cumulative total in cents
+         */
+        public long getCumulativeCents() {
+            return cumulativeCents;
+        }
+
+        /**
+         * Gets the reason why the file was left out.
+         *
+         * @return the error message, or null if the file was merged
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * The aggregates of every file of a directory.
+     */
+    public static final class Result {
+        private final List<FileSummary> files;
+        private final long count;
+        private final float average;
+        private final float maximum;
+        private final long totalCents;
+        private final PriceHistogram histogram;
+        private final QuantileSketch sketch;
+
+        Result(List<FileSummary> files, long count, float average, float maximum, long totalCents,
+                PriceHistogram histogram, QuantileSketch sketch) {
+            this.files = Collections.unmodifiableList(files);
+            this.count = count;
+            this.average = average;
+            this.maximum = maximum;
+            this.totalCents = totalCents;
+            this.histogram = histogram;
+            this.sketch = sketch;
+        }
+
+        /**
+         * Gets the summary of every file, in name order.
+         *
+         * @return the file summaries
+         */
+        public List<FileSummary> getFiles() {
+            return files;
+        }
+
+        /**
+         * Gets the number of prices of the merged files.
+         *
+         * @return the number of prices
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the average price of the merged files.
+         *
+         * @return the average, or NaN if no price was merged
+         */
+        public float getAverage() {
+            return average;
+        }
+
+        /**
+         * Gets the maximum price of the merged files.
+         *
+         * @return the maximum, or NaN if no price was merged
+         */
+        public float getMaximum() {
+            return maximum;
+        }
+
+        /**
+         * Gets the total of the prices of the merged files, each rounded to cents.
+         *
+         * @return the total in cents
+         */
+        public long getTotalCents() {
+            return totalCents;
+        }
+
+        /**
+         * Gets the histogram of the prices of the merged files.
+         *
+         * @return the histogram
+         */
+        public PriceHistogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * Gets the quantile sketch of the prices of the merged files.
+         *
+         * @return the sketch
+         */
+        public QuantileSketch getSketch() {
+            return sketch;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The PriceKernels interface defines the inner loops run over a chunk of
+ * a price series. The implementation is chosen once at startup: the vector
+ * kernels when the {@code jdk.incubator.vector} module is available, the
+ * scalar kernels otherwise. Setting the {@code stockprice.kernels} system
+ * property to {@code scalar} forces the scalar kernels.
+ */
+interface PriceKernels {
+    String KERNELS_PROPERTY = "stockprice.kernels";
+
+    /**
+     * Calculates the sum of the first prices of a chunk.
+     *
+     * @param chunk  the chunk of prices
+     * @param length the number of prices to add
+     * @return the sum of the prices
+     */
+    float sum(ByteBuffer chunk, int length);
+
+    /**
+     * Calculates the sum of the first prices of a chunk with compensated
+     * summation, carrying the rounding error of every addition so that the
+     * result stays accurate for long chunks.
+     *
+     * @param chunk  the chunk of prices
+     * @param length the number of prices to add
+     * @return the sum of the prices
+     */
+    double compensatedSum(ByteBuffer chunk, int length);
+
+    /**
+     * Finds the maximum of the first prices of a chunk.
+     *
+     * @param chunk   the chunk of prices
+     * @param length  the number of prices to compare
+     * @param initial the value to start comparing from
+     * @return the maximum price, or the initial value if no price is greater
+     */
+    float max(ByteBuffer chunk, int length, float initial);
+
+    /**
+     * Counts the prices of a chunk equal to a target.
+     *
+     * @param chunk  the chunk of prices
+     * @param length the number of prices to check
+     * @param target the price to count
+     * @return the number of occurrences
+     */
+    long count(ByteBuffer chunk, int length, float target);
+
+    /**
+     * Gets the greater of two prices, ignoring NaN the way the max kernels do:
+     * a NaN is only returned when both prices are NaN.
+     *
+     * @param first  the first price
+     * @param second the second price
+     * @return the greater price
+     */
+    static float greater(float first, float second) {
+        return second > first || Float.isNaN(first) ? second : first;
+    }
+
+    /**
+     * Gets the kernels chosen for this host.
+     *
+     * @return the kernels to use
+     */
+    static PriceKernels get() {
+        return Selection.KERNELS;
+    }
+
+    /**
+     * Holds the kernels chosen the first time they are needed.
+     */
+    final class Selection {
+        private static final PriceKernels KERNELS = select();
+
+        private Selection() {
+            throw new IllegalStateException("Utility class");
+        }
+
+        /**
+         * Chooses the vector kernels if the Vector API can be loaded.
+         *
+         * @return the kernels to use
+         */
+        private static PriceKernels select() {
+            boolean isScalarForced = "scalar".equals(System.getProperty(KERNELS_PROPERTY));
+            boolean hasVectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+            if (!isScalarForced && hasVectorModule) {
+                try {
+                    return (PriceKernels) Class.forName(PriceKernels.class.getPackageName() + ".VectorPriceKernels")
+                        .getDeclaredConstructor()
+                        .newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    return new ScalarPriceKernels();
+                }
+            }
+
+            return new ScalarPriceKernels();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The PriceParser class is a small state machine that turns a stream of
+ * characters into prices without creating a String per token.
+ * Prices are separated by commas or line breaks, and blank lines are skipped.
+ * Commas may end a line, as String.split allowed, but an empty price between
+ * two commas is invalid. Prices are decimal numbers with an optional sign,
+ * point and exponent; unlike Float.parseFloat, NaN, Infinity, hexadecimal
+ * notation and the f and d suffixes are rejected.
+ * Parsing stops at the first invalid character, whose position is kept
+ * so callers can report it.
+ */
+final class PriceParser {
+    /**
+     * Receives every price recognised by the parser.
+     */
+    interface Sink {
+        /**
+         * Accepts a parsed price.
+         *
+         * @param price the parsed price
+         */
+        void accept(float price);
+    }
+
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+    private static final long MAX_FLOAT_INTEGER = 1L << 24;
+    private static final double MAX_DOUBLE_INTEGER = 0x1p53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private long position = 0;
+    private long errorPosition = -1;
+    private long emptyPricePosition = -1;
+    private boolean expectingToken = false;
+    private boolean inToken = false;
+    private boolean tokenEnded = false;
+
+    private long mantissa;
+    private int significantDigits;
+    private int decimalExponent;
+    private boolean negative;
+    private boolean seenSign;
+    private boolean seenDigit;
+    private boolean seenPoint;
+    private boolean inExponent;
+    private boolean seenExponentDigit;
+    private boolean seenExponentSign;
+    private boolean negativeExponent;
+    private int exponent;
+    private char[] characters = new char[32];
+    private int characterCount;
+    private float parsedPrice;
+    private final Sink priceSink = price -> parsedPrice = price;
+
+    /**
+     * Feeds every remaining byte of a buffer to the parser.
+     *
+     * @param buffer the bytes to parse
+     * @param sink   the receiver of the parsed prices
+     * @return true if the bytes were valid so far, false otherwise
+     */
+    boolean feed(ByteBuffer buffer, Sink sink) {
+        int limit = buffer.limit();
+
+        for (int index = buffer.position(); index < limit; index += 1) {
+            if (!next(buffer.get(index), sink)) {
+                buffer.position(index);
+                return false;
+            }
+        }
+
+        buffer.position(limit);
+        return true;
+    }
+
+    /**
+     * Feeds every character of a text to the parser.
+     *
+     * @param text the characters to parse
+     * @param sink the receiver of the parsed prices
+     * @return true if the characters were valid so far, false otherwise
+     */
+    boolean feed(CharSequence text, Sink sink) {
+        for (int index = 0; index < text.length(); index += 1) {
+            if (!next(text.charAt(index), sink)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Feeds a single character to the parser.
+     *
+     * @param character the character to parse
+     * @param sink      the receiver of the parsed prices
+     * @return true if the input is valid so far, false otherwise
+     */
+    boolean next(int character, Sink sink) {
+        if (errorPosition >= 0) return false;
+
+        boolean valid;
+
+        switch (character) {
+            case ',' -> valid = endToken(sink, true);
+            case '\n' -> valid = endToken(sink, false);
+            case ' ', '\t', '\r' -> {
+                if (inToken) tokenEnded = true;
+                valid = true;
+            }
+            default -> {
+                if (!inToken && emptyPricePosition >= 0) {
+                    errorPosition = emptyPricePosition;
+                    return false;
+                }
+
+                valid = !tokenEnded && accumulate(character);
+            }
+        }
+
+        if (!valid) {
+            errorPosition = position;
+            return false;
+        }
+
+        position += 1;
+        return true;
+    }
+
+    /**
+     * Signals the end of the input, emitting a pending price if any.
+     *
+     * @param sink the receiver of the parsed prices
+     * @return true if the whole input was valid, false otherwise
+     */
+    boolean finish(Sink sink) {
+        if (errorPosition >= 0) return false;
+
+        if (!endToken(sink, false)) {
+            errorPosition = position;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses a single price from part of a text, with optional blanks around it.
+     * It must not be called in the middle of a stream, and it leaves the parser
+     * ready for the next price, so one parser can parse every field of a file.
+     *
+     * @param text the characters to parse
+     * @param from the position of the first character, inclusive
+     * @param to   the position of the last character, exclusive
+     * @return the parsed price
+     * @throws NumberFormatException if the characters are not a single valid price
+     */
+    float parsePrice(CharSequence text, int from, int to) {
+        boolean valid = true;
+
+        for (int index = from; index < to && valid; index += 1) {
+            char character = text.charAt(index);
+            valid = character != ',' && character != '\n' && next(character, priceSink);
+        }
+
+        valid = valid && inToken && endToken(priceSink, false);
+        position = 0;
+        errorPosition = -1;
+        emptyPricePosition = -1;
+        expectingToken = false;
+        reset();
+
+        if (!valid) {
+            throw new NumberFormatException("Invalid price: " + text.subSequence(from, to));
+        }
+
+        return parsedPrice;
+    }
+
+    /**
+     * Gets the position of the first invalid character.
+     *
+     * @return the zero-based position, or -1 if no error was found
+     */
+    long getErrorPosition() {
+        return errorPosition;
+    }
+
+    /**
+     * Ends the current token, emitting its price.
+     *
+     * @param sink        the receiver of the parsed prices
+     * @param isSeparator true if the token was ended by a comma
+     * @return true if the token was valid, false otherwise
+     */
+    private boolean endToken(Sink sink, boolean isSeparator) {
+        if (!inToken) {
+            if (isSeparator) {
+                if (!expectingToken) return false;
+                if (emptyPricePosition < 0) emptyPricePosition = position;
+                return true;
+            }
+
+            expectingToken = false;
+            emptyPricePosition = -1;
+            return true;
+        }
+
+        if (!seenDigit || (inExponent && !seenExponentDigit)) return false;
+
+        sink.accept(toFloat());
+        reset();
+        expectingToken = isSeparator;
+        return true;
+    }
+
+    /**
+     * Adds a character to the current token.
+     *
+     * @param character the character to add
+     * @return true if the character is valid at this point, false otherwise
+     */
+    private boolean accumulate(int character) {
+        inToken = true;
+
+        if (characterCount == characters.length) {
+            characters = Arrays.copyOf(characters, characterCount << 1);
+        }
+
+        characters[characterCount] = (char) character;
+        characterCount += 1;
+
+        if (character >= '0' && character <= '9') {
+            int digit = character - '0';
+
+            if (inExponent) {
+                seenExponentDigit = true;
+                if (exponent < 10_000) exponent = exponent * 10 + digit;
+                return true;
+            }
+
+            seenDigit = true;
+
+            if (mantissa == 0 && digit == 0) {
+                if (seenPoint) decimalExponent -= 1;
+            } else if (significantDigits < MAX_SIGNIFICANT_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                significantDigits += 1;
+                if (seenPoint) decimalExponent -= 1;
+            } else if (!seenPoint) {
+                decimalExponent += 1;
+            }
+
+            return true;
+        }
+
+        switch (character) {
+            case '.' -> {
+                if (seenPoint || inExponent) return false;
+                seenPoint = true;
+                return true;
+            }
+            case '-', '+' -> {
+                if (inExponent) {
+                    if (seenExponentSign || seenExponentDigit) return false;
+                    seenExponentSign = true;
+                    negativeExponent = character == '-';
+                    return true;
+                }
+
+                if (seenSign || seenDigit || seenPoint) return false;
+                seenSign = true;
+                negative = character == '-';
+                return true;
+            }
+            case 'e', 'E' -> {
+                if (inExponent || !seenDigit) return false;
+                inExponent = true;
+                return true;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Converts the accumulated digits to the nearest float, as Float.parseFloat does.
+     * When the digits and the power of ten are exact doubles whose product is
+     * below 2^53, or exact floats whose quotient is rounded only once more to
+     * a float, double arithmetic gives that float. This covers ordinary prices
+     * of up to 7 significant digits. Other prices are parsed from the characters
+     * of the token.
+     *
+     * @return the parsed price
+     */
+    private float toFloat() {
+        int scale = decimalExponent + (negativeExponent ? -exponent : exponent);
+
+        if (mantissa == 0) {
+            return negative ? -0f : 0f;
+        }
+
+        if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            double value = mantissa * POWERS_OF_TEN[scale];
+
+            if (value < MAX_DOUBLE_INTEGER) {
+                return (float) (negative ? -value : value);
+            }
+        } else if (scale < 0 && scale >= -10 && mantissa <= MAX_FLOAT_INTEGER) {
+            double value = mantissa / POWERS_OF_TEN[-scale];
+            return (float) (negative ? -value : value);
+        }
+
+        return Float.parseFloat(new String(characters, 0, characterCount));
+    }
+
+    /**
+     * Clears the state of the current token.
+     */
+    private void reset() {
+        inToken = false;
+        tokenEnded = false;
+        mantissa = 0;
+        significantDigits = 0;
+        decimalExponent = 0;
+        negative = false;
+        seenSign = false;
+        seenDigit = false;
+        seenPoint = false;
+        inExponent = false;
+        seenExponentDigit = false;
+        seenExponentSign = false;
+        negativeExponent = false;
+        exponent = 0;
+        characterCount = 0;
+    }
+}
@@ -0,0 +1,185 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The PriceSeries class stores a sequence of stock prices outside the
+ * garbage collected heap. Prices live in fixed-size chunks of direct memory,
+ * so a series is not limited to the length of a Java array and can be loaded
+ * once and reused by every operation. The first chunk starts small and
+ * doubles up to the full chunk size, so short series stay cheap to build.
+ */
+public final class PriceSeries {
+    static final int CHUNK_SHIFT = 20;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CHUNK_SIZE = 1 << 10;
+
+    private ByteBuffer[] chunks = new ByteBuffer[8];
+    private int chunkCount = 0;
+    private long size = 0;
+    private boolean isReadOnly = false;
+
+    /**
+     * Creates a series holding a copy of the given prices.
+     *
+     * @param values the prices to copy
+     * @return a new series with the prices in the same order
+     */
+    public static PriceSeries of(float... values) {
+        PriceSeries series = new PriceSeries();
+
+        for (float value : values) {
+            series.append(value);
+        }
+
+        return series;
+    }
+
+    /**
+     * Creates a read-only series over existing chunks, such as the mapped blocks of a snapshot.
+     * Every chunk but the last must hold exactly CHUNK_SIZE prices.
+     *
+     * @param chunks the chunks of prices, in the byte order set on each buffer
+     * @param size   the number of prices
+     * @return a series reading the chunks in place
+     */
+    static PriceSeries wrap(ByteBuffer[] chunks, long size) {
+        PriceSeries series = new PriceSeries();
+        series.chunks = chunks.length == 0 ? new ByteBuffer[1] : chunks.clone();
+        series.chunkCount = chunks.length;
+        series.size = size;
+        series.isReadOnly = true;
+        return series;
+    }
+
+    /**
+     * Adds a price at the end of the series.
+     *
+     * @param price the price to add
+     * @throws UnsupportedOperationException if the series is read-only
+     */
+    public void append(float price) {
+        if (isReadOnly) {
+            throw new UnsupportedOperationException("The series is read-only.");
+        }
+
+        int offset = (int) (size & CHUNK_MASK);
+
+        if (offset == 0) {
+            addChunk();
+        } else if (offset << 2 == chunks[chunkCount - 1].capacity()) {
+            growChunk();
+        }
+
+        chunks[chunkCount - 1].putFloat(offset << 2, price);
+        size += 1;
+    }
+
+    /**
+     * Gets the price at the given position.
+     *
+     * @param index the zero-based position of the price
+     * @return the price at the position
+     * @throws IndexOutOfBoundsException if the index is outside the series
+     */
+    public float get(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+
+        return chunks[(int) (index >>> CHUNK_SHIFT)].getFloat((int) (index & CHUNK_MASK) << 2);
+    }
+
+    /**
+     * Gets the number of prices in the series.
+     *
+     * @return the size of the series
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Checks if the series has no prices.
+     *
+     * @return true if the series is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the number of chunks holding prices.
+     *
+     * @return the number of chunks
+     */
+    int chunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Gets the memory of a chunk. Prices are stored as floats, in native byte
+     * order unless the series wraps chunks in another order.
+     *
+     * @param chunkIndex the zero-based position of the chunk
+     * @return a read-only view of the chunk, in the byte order of the chunk
+     */
+    ByteBuffer chunk(int chunkIndex) {
+        return chunks[chunkIndex].asReadOnlyBuffer().order(chunks[chunkIndex].order());
+    }
+
+    /**
+     * Gets the number of prices stored in a chunk.
+     *
+     * @param chunkIndex the zero-based position of the chunk
+     * @return the number of prices in the chunk
+     */
+    int chunkLength(int chunkIndex) {
+        if (chunkIndex < chunkCount - 1) return CHUNK_SIZE;
+
+        return (int) (size - ((long) chunkIndex << CHUNK_SHIFT));
+    }
+
+    /**
+     * Gets the memory held by the chunks of the series.
+     *
+     * @return the capacity of every chunk, in bytes
+     */
+    long memoryBytes() {
+        long bytes = 0;
+
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex += 1) {
+            bytes += chunks[chunkIndex].capacity();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Allocates a new chunk of direct memory at the end of the series.
+     * The first chunk starts small, the following ones are full-size.
+     */
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+
+        int capacity = chunkCount == 0 ? INITIAL_CHUNK_SIZE : CHUNK_SIZE;
+        chunks[chunkCount] = ByteBuffer.allocateDirect(capacity << 2).order(ByteOrder.nativeOrder());
+        chunkCount += 1;
+    }
+
+    /**
+     * Doubles the capacity of the last chunk, which is full but still
+     * smaller than the full chunk size.
+     */
+    private void growChunk() {
+        ByteBuffer chunk = chunks[chunkCount - 1];
+        ByteBuffer larger = ByteBuffer.allocateDirect(chunk.capacity() * 2).order(ByteOrder.nativeOrder());
+        larger.put(chunk.duplicate().clear());
+        chunks[chunkCount - 1] = larger.clear();
+    }
+}
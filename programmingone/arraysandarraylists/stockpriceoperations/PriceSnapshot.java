@@ -0,0 +1,306 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * The PriceSnapshot class saves a price series to a compact binary file and
+ * opens it again without parsing any text. Every number is little-endian.
+ * <p>
+ * The file starts with a 32-byte header: the magic number, the format
+ * version, the encoding, the number of prices, the number of prices per
+ * block and the number of blocks. A table follows with the offset, length
+ * and CRC32C checksum of every block, and then the blocks themselves.
+ * Blocks hold as many prices as a PriceSeries chunk.
+ * <p>
+ * With the FLOAT encoding every block is a column of floats, which is
+ * memory-mapped and read in place when the file is opened. With the
+ * DELTA_CENTS encoding prices are rounded to cents and every block stores
+ * the difference to the previous price as a zigzag varint, which is much
+ * smaller for real ticks but has to be decoded when the file is opened.
+ */
+public final class PriceSnapshot {
+    /**
+     * How the prices of a block are stored.
+     */
+    public enum Encoding {
+        FLOAT,
+        DELTA_CENTS
+    }
+
+    static final String FILE_EXTENSION = ".prs";
+    private static final int MAGIC = 0x4E535250;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int TABLE_ENTRY_SIZE = 16;
+    private static final int BLOCK_SIZE = PriceSeries.CHUNK_SIZE;
+
+    private PriceSnapshot() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Writes a series to a snapshot file, replacing the file if it exists.
+     * The snapshot is written to a temporary file next to the target and
+     * moved over it once complete, so the target can be the file the series
+     * itself is mapped from, and a failed write leaves the old file intact.
+     *
+     * @param series   the series to save
+     * @param path     the file to write
+     * @param encoding how the prices are stored
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(PriceSeries series, Path path, Encoding encoding) throws IOException {
+        int blockCount = series.chunkCount();
+        ByteBuffer table = ByteBuffer.allocate(blockCount * TABLE_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int maximumBlockBytes = encoding == Encoding.FLOAT ? BLOCK_SIZE * 4 : BLOCK_SIZE * 10;
+        ByteBuffer block = ByteBuffer.allocateDirect(maximumBlockBytes).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C checksum = new CRC32C();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = HEADER_SIZE + (long) blockCount * TABLE_ENTRY_SIZE;
+            long previousCents = 0;
+
+            for (int blockIndex = 0; blockIndex < blockCount; blockIndex += 1) {
+                ByteBuffer chunk = series.chunk(blockIndex);
+                int length = series.chunkLength(blockIndex);
+                block.clear();
+
+                for (int index = 0; index < length; index += 1) {
+                    float price = chunk.getFloat(index << 2);
+
+                    if (encoding == Encoding.FLOAT) {
+                        block.putFloat(price);
+                    } else {
+                        long cents = PriceCents.toCents(price);
+                        putVarint(block, zigzag(cents - previousCents));
+                        previousCents = cents;
+                    }
+                }
+
+                block.flip();
+                checksum.reset();
+                checksum.update(block.duplicate());
+
+                int blockBytes = block.remaining();
+                table.putLong(offset);
+                table.putInt(blockBytes);
+                table.putInt((int) checksum.getValue());
+
+                writeFully(channel, block, offset);
+                offset += blockBytes;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) encoding.ordinal());
+            header.putLong(series.size());
+            header.putInt(BLOCK_SIZE);
+            header.putInt(blockCount);
+            header.flip();
+            table.flip();
+
+            writeFully(channel, header, 0);
+            writeFully(channel, table, HEADER_SIZE);
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens a snapshot file without checking the block checksums of FLOAT snapshots,
+     * so that it is ready in constant time.
+     *
+     * @param path the file to open
+     * @return the series saved in the file
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static PriceSeries open(Path path) throws IOException {
+        return open(path, false);
+    }
+
+    /**
+     * Opens a snapshot file. FLOAT snapshots are mapped and read in place,
+     * while DELTA_CENTS snapshots are decoded into a new series and always checked.
+     *
+     * @param path   the file to open
+     * @param verify true to check the checksum of every block
+     * @return the series saved in the file
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static PriceSeries open(Path path, boolean verify) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_SIZE, channel.size()))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getShort() != VERSION) {
+                throw new IOException("Not a price snapshot: " + path);
+            }
+
+            int encodingIndex = header.getShort();
+            long size = header.getLong();
+            int blockSize = header.getInt();
+            int blockCount = header.getInt();
+
+            if (encodingIndex < 0 || encodingIndex >= Encoding.values().length || size < 0 || blockSize != BLOCK_SIZE
+                    || blockCount != (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE)) {
+                throw new IOException("Unsupported price snapshot: " + path);
+            }
+
+            Encoding encoding = Encoding.values()[encodingIndex];
+            long fileSize = channel.size();
+
+            if (HEADER_SIZE + (long) blockCount * TABLE_ENTRY_SIZE > fileSize) {
+                throw new IOException("Truncated price snapshot: " + path);
+            }
+
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                (long) blockCount * TABLE_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer[] blocks = new ByteBuffer[blockCount];
+            CRC32C checksum = new CRC32C();
+
+            for (int blockIndex = 0; blockIndex < blockCount; blockIndex += 1) {
+                long offset = table.getLong();
+                int length = table.getInt();
+                int expectedChecksum = table.getInt();
+                long prices = Math.min(BLOCK_SIZE, size - (long) blockIndex * BLOCK_SIZE);
+
+                if (offset < 0 || length < 0 || offset + length > fileSize
+                        || (encoding == Encoding.FLOAT && length != prices * 4)) {
+                    throw new IOException(String.format("Truncated or corrupted block %d in %s", blockIndex, path));
+                }
+
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+
+                if (verify || encoding == Encoding.DELTA_CENTS) {
+                    checksum.reset();
+                    checksum.update(block.duplicate());
+
+                    if ((int) checksum.getValue() != expectedChecksum) {
+                        throw new IOException(String.format("Corrupted block %d in %s", blockIndex, path));
+                    }
+                }
+
+                blocks[blockIndex] = block.order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            if (encoding == Encoding.FLOAT) {
+                return PriceSeries.wrap(blocks, size);
+            }
+
+            return decodeCents(blocks, size, path);
+        }
+    }
+
+    /**
+     * Decodes DELTA_CENTS blocks into a new series.
+     *
+     * @param blocks the blocks of the file
+     * @param size   the number of prices
+     * @param path   the file being read, for error messages
+     * @return the decoded series
+     * @throws IOException if a block does not hold the expected number of prices
+     */
+    private static PriceSeries decodeCents(ByteBuffer[] blocks, long size, Path path) throws IOException {
+        PriceSeries series = new PriceSeries();
+        long cents = 0;
+
+        for (ByteBuffer block : blocks) {
+            long remaining = Math.min(BLOCK_SIZE, size - series.size());
+
+            for (long index = 0; index < remaining; index += 1) {
+                if (!block.hasRemaining()) {
+                    throw new IOException("Truncated price snapshot: " + path);
+                }
+
+                cents += unzigzag(getVarint(block));
+                series.append(PriceCents.toFloat(cents));
+            }
+        }
+
+        return series;
+    }
+
+    /**
+     * Writes a whole buffer at a position of a file.
+     *
+     * @param channel  the file
+     * @param buffer   the bytes to write
+     * @param position the position in the file
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Maps a signed number to an unsigned one so that small magnitudes stay small.
+     *
+     * @param value the signed number
+     * @return the zigzag encoded number
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses the zigzag encoding.
+     *
+     * @param value the zigzag encoded number
+     * @return the signed number
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a number using 7 bits per byte, the high bit telling if more bytes follow.
+     *
+     * @param buffer the buffer to write to
+     * @param value  the number to write
+     */
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a number written by putVarint.
+     *
+     * @param buffer the buffer to read from
+     * @return the number read
+     */
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte current = buffer.get();
+            value |= (long) (current & 0x7F) << shift;
+
+            if (current >= 0) return value;
+        }
+
+        return value;
+    }
+}
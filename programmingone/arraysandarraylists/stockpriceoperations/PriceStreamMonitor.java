@@ -0,0 +1,199 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The PriceStreamMonitor class reads an unbounded stream of prices, from a
+ * pipe or from a file that keeps growing, and prints the rolling window
+ * statistics every given number of prices. Each line is tab separated:
+ * ticks, window average, window maximum and cumulative sum.
+ */
+public final class PriceStreamMonitor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long POLL_MILLISECONDS = 200;
+
+    private final RollingWindowStats stats;
+    private final long interval;
+    private final PrintStream out;
+    private final PriceParser.Sink sink = this::accept;
+    private PriceParser parser = new PriceParser();
+    private long printedTicks = 0;
+
+    /**
+     * Creates a monitor.
+     *
+     * @param windowSize the number of latest prices in the window
+     * @param interval   the number of prices between two printed lines
+     * @param out        the stream where the statistics are printed
+     * @throws IllegalArgumentException if the window size or the interval is not positive
+     */
+    public PriceStreamMonitor(int windowSize, long interval, PrintStream out) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive.");
+        }
+
+        this.stats = new RollingWindowStats(windowSize);
+        this.interval = interval;
+        this.out = out;
+    }
+
+    /**
+     * Reads prices until the end of a stream, such as a pipe into the standard input.
+     *
+     * @param in the stream of prices
+     * @throws IOException           if the stream cannot be read
+     * @throws NumberFormatException if the stream contains a non-float value
+     */
+    public void run(InputStream in) throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int read;
+
+        while ((read = in.read(bytes)) >= 0) {
+            feed(ByteBuffer.wrap(bytes, 0, read));
+        }
+
+        if (!parser.finish(sink)) {
+            throw invalidPrice();
+        }
+
+        print();
+    }
+
+    /**
+     * Follows a file, reading the prices appended to it until the thread is interrupted.
+     * When the file becomes shorter than what was already read, or another file
+     * replaces it, it is opened again and read from the start.
+     *
+     * @param path the file to follow
+     * @throws IOException           if the file cannot be read
+     * @throws NumberFormatException if the file contains a non-float value
+     */
+    public void tail(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        Object fileKey = getFileKey(path);
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                buffer.clear();
+
+                if (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    feed(buffer);
+                    continue;
+                }
+
+                if (isRestarted(path, fileKey, channel.position())) {
+                    channel.close();
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    fileKey = getFileKey(path);
+                    parser = new PriceParser();
+                    continue;
+                }
+
+                try {
+                    Thread.sleep(POLL_MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Checks if a file was truncated below the position already read, or
+     * replaced by another file. A file missing for a moment while it is being
+     * replaced has not restarted yet.
+     *
+     * @param path     the file to check
+     * @param fileKey  the key of the file being read, or null if the platform has none
+     * @param position the number of bytes already read
+     * @return true if the file must be read again from the start, false otherwise
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    private static boolean isRestarted(Path path, Object fileKey, long position) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.size() < position || fileKey != null && !fileKey.equals(attributes.fileKey());
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the key that identifies a file, such as its inode.
+     *
+     * @param path the file
+     * @return the key of the file, or null if the platform has none
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    private static Object getFileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Gets the statistics of the prices read so far.
+     *
+     * @return the rolling window statistics
+     */
+    public RollingWindowStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Parses a buffer of bytes from the stream.
+     *
+     * @param buffer the bytes to parse
+     */
+    private void feed(ByteBuffer buffer) {
+        if (!parser.feed(buffer, sink)) {
+            throw invalidPrice();
+        }
+    }
+
+    /**
+     * Adds a price to the statistics, printing them at every interval.
+     *
+     * @param price the parsed price
+     */
+    private void accept(float price) {
+        stats.add(price);
+
+        if (stats.getTicks() % interval == 0) {
+            print();
+        }
+    }
+
+    /**
+     * Prints the current statistics, unless they were already printed.
+     */
+    private void print() {
+        if (stats.getTicks() == printedTicks) return;
+
+        printedTicks = stats.getTicks();
+
+        out.printf("%d\t%.2f\t%.2f\t%.2f%n", stats.getTicks(), stats.getAverage(),
+            PriceCents.toCents(stats.getMaximum()) / 100.0, stats.getCumulativeSumCents() / 100.0);
+    }
+
+    /**
+     * Builds the exception thrown when the stream contains an invalid price.
+     *
+     * @return the exception describing the error
+     */
+    private NumberFormatException invalidPrice() {
+        return new NumberFormatException(
+            String.format("Invalid price at byte %d of the stream", parser.getErrorPosition()));
+    }
+}
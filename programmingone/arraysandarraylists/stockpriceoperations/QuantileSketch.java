@@ -0,0 +1,244 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.util.Arrays;
+
+/**
+ * The QuantileSketch class estimates percentiles of a stream of prices in
+ * bounded memory, in the style of the KLL sketch. Prices enter level 0, and
+ * whenever a level is full it is sorted and every other price is promoted to
+ * the next level, where each price stands for twice as many prices.
+ * Sketches built on different threads or files can be merged.
+ * <p>
+ * With a level capacity of k the sketch keeps O(k log(n / k)) prices, and
+ * the rank error of an estimate shrinks as k grows. The promoted half
+ * alternates between compactions, so the result is deterministic.
+ * The minimum and the maximum are kept exactly.
+ */
+public final class QuantileSketch {
+    private static final int DEFAULT_CAPACITY = 200;
+
+    private final int capacity;
+    private float[][] levels = new float[1][];
+    private int[] sizes = new int[1];
+    private boolean[] takeOdd = new boolean[1];
+    private long count = 0;
+    private float minimum = Float.POSITIVE_INFINITY;
+    private float maximum = Float.NEGATIVE_INFINITY;
+
+    /**
+     * Creates a sketch with the default level capacity of 200.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a sketch.
+     *
+     * @param capacity the number of prices a level holds before it is compacted
+     * @throws IllegalArgumentException if the capacity is less than 2
+     */
+    public QuantileSketch(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("The capacity must be at least 2.");
+        }
+
+        this.capacity = capacity;
+        levels[0] = new float[capacity * 2];
+    }
+
+    /**
+     * Creates the sketch of a series.
+     *
+     * @param series the series of prices
+     * @return the sketch of the series
+     */
+    public static QuantileSketch of(PriceSeries series) {
+        QuantileSketch sketch = new QuantileSketch();
+
+        for (long index = 0; index < series.size(); index += 1) {
+            sketch.add(series.get(index));
+        }
+
+        return sketch;
+    }
+
+    /**
+     * Adds a price to the sketch. NaN prices are ignored.
+     *
+     * @param price the price to add
+     */
+    public void add(float price) {
+        if (Float.isNaN(price)) return;
+
+        levels[0][sizes[0]] = price;
+        sizes[0] += 1;
+        count += 1;
+        minimum = Math.min(minimum, price);
+        maximum = Math.max(maximum, price);
+
+        if (sizes[0] >= capacity) {
+            compact(0);
+        }
+    }
+
+    /**
+     * Adds every price summarised by another sketch to this sketch.
+     *
+     * @param other the sketch to merge, left unchanged
+     * @throws IllegalArgumentException if the sketches have different capacities
+     */
+    public void merge(QuantileSketch other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("Only sketches with the same capacity can be merged.");
+        }
+
+        for (int level = 0; level < other.levels.length; level += 1) {
+            ensureLevel(level);
+
+            for (int index = 0; index < other.sizes[level]; index += 1) {
+                levels[level][sizes[level]] = other.levels[level][index];
+                sizes[level] += 1;
+
+                if (sizes[level] >= capacity) {
+                    compact(level);
+                }
+            }
+        }
+
+        count += other.count;
+        minimum = Math.min(minimum, other.minimum);
+        maximum = Math.max(maximum, other.maximum);
+    }
+
+    /**
+     * Gets the number of prices added to the sketch.
+     *
+     * @return the number of prices
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Estimates the price below which a fraction of the prices fall.
+     *
+     * @param fraction the fraction, from 0 for the minimum to 1 for the maximum
+     * @return the estimated price, or NaN if the sketch is empty
+     * @throws IllegalArgumentException if the fraction is outside 0 to 1
+     */
+    public float quantile(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("The fraction must be between 0 and 1.");
+        }
+
+        if (count == 0) return Float.NaN;
+        if (fraction == 0) return minimum;
+        if (fraction == 1) return maximum;
+
+        int total = 0;
+
+        for (int size : sizes) {
+            total += size;
+        }
+
+        long[] items = new long[total];
+        int position = 0;
+
+        for (int level = 0; level < levels.length; level += 1) {
+            for (int index = 0; index < sizes[level]; index += 1) {
+                items[position] = ((long) toSortableBits(levels[level][index]) << 8) | level;
+                position += 1;
+            }
+        }
+
+        Arrays.sort(items);
+
+        long weight = 0;
+        long totalWeight = 0;
+
+        for (long item : items) {
+            totalWeight += 1L << (item & 0xFF);
+        }
+
+        double target = fraction * totalWeight;
+
+        for (long item : items) {
+            weight += 1L << (item & 0xFF);
+
+            if (weight >= target) {
+                return fromSortableBits((int) (item >> 8));
+            }
+        }
+
+        return fromSortableBits((int) (items[items.length - 1] >> 8));
+    }
+
+    /**
+     * Sorts a full level and promotes every other price to the next level.
+     *
+     * @param level the level to compact
+     */
+    private void compact(int level) {
+        ensureLevel(level + 1);
+
+        float[] prices = levels[level];
+        int pairs = sizes[level] / 2;
+        Arrays.sort(prices, 0, pairs * 2);
+
+        int offset = takeOdd[level] ? 1 : 0;
+        takeOdd[level] = !takeOdd[level];
+
+        for (int index = 0; index < pairs; index += 1) {
+            levels[level + 1][sizes[level + 1]] = prices[index * 2 + offset];
+            sizes[level + 1] += 1;
+        }
+
+        prices[0] = prices[sizes[level] - 1];
+        sizes[level] -= pairs * 2;
+
+        if (sizes[level + 1] >= capacity) {
+            compact(level + 1);
+        }
+    }
+
+    /**
+     * Adds empty levels until the given level exists.
+     *
+     * @param level the level that must exist
+     */
+    private void ensureLevel(int level) {
+        if (level < levels.length) return;
+
+        levels = Arrays.copyOf(levels, level + 1);
+        sizes = Arrays.copyOf(sizes, level + 1);
+        takeOdd = Arrays.copyOf(takeOdd, level + 1);
+
+        for (int index = 0; index <= level; index += 1) {
+            if (levels[index] == null) {
+                levels[index] = new float[capacity * 2];
+            }
+        }
+    }
+
+    /**
+     * Converts a price to an int whose signed order is the order of the prices.
+     *
+     * @param price the price to convert
+     * @return the sortable bits of the price
+     */
+    private static int toSortableBits(float price) {
+        int bits = Float.floatToIntBits(price == 0 ? 0f : price);
+        return bits < 0 ? bits ^ 0x7FFFFFFF : bits;
+    }
+
+    /**
+     * Converts sortable bits back to the price.
+     *
+     * @param bits the sortable bits
+     * @return the price
+     */
+    private static float fromSortableBits(int bits) {
+        return Float.intBitsToFloat(bits < 0 ? bits ^ 0x7FFFFFFF : bits);
+    }
+}
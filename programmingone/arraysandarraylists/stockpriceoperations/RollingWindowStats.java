@@ -0,0 +1,116 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+/**
+ * The RollingWindowStats class keeps the average and the maximum of the
+ * last prices of an unbounded stream, along with the cumulative sum of every
+ * price seen. Each new price is handled in constant amortized time: the
+ * window sum is updated with the entering and leaving prices, and the
+ * maximum comes from a monotonic deque of decreasing prices.
+ * Prices are rounded to cents as in the cumulative sum operation.
+ */
+public final class RollingWindowStats {
+    private final long[] windowCents;
+    private final long[] dequeTicks;
+    private final float[] dequePrices;
+    private int dequeHead = 0;
+    private int dequeSize = 0;
+    private long ticks = 0;
+    private long windowSum = 0;
+    private long cumulativeSum = 0;
+
+    /**
+     * Creates the statistics of a window of prices.
+     *
+     * @param windowSize the number of latest prices in the window
+     * @throws IllegalArgumentException if the window size is not positive
+     */
+    public RollingWindowStats(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("The window size must be positive.");
+        }
+
+        windowCents = new long[windowSize];
+        dequeTicks = new long[windowSize];
+        dequePrices = new float[windowSize];
+    }
+
+    /**
+     * Adds the next price of the stream. NaN prices are ignored.
+     *
+     * @param price the price to add
+     */
+    public void add(float price) {
+        if (Float.isNaN(price)) return;
+
+        int slot = (int) (ticks % windowCents.length);
+        long cents = PriceCents.toCents(price);
+
+        if (ticks >= windowCents.length) {
+            windowSum -= windowCents[slot];
+        }
+
+        windowCents[slot] = cents;
+        windowSum += cents;
+        cumulativeSum += cents;
+
+        if (dequeSize > 0 && dequeTicks[dequeHead] <= ticks - windowCents.length) {
+            dequeHead = (dequeHead + 1) % windowCents.length;
+            dequeSize -= 1;
+        }
+
+        while (dequeSize > 0 && dequePrices[(dequeHead + dequeSize - 1) % windowCents.length] <= price) {
+            dequeSize -= 1;
+        }
+
+        int tail = (dequeHead + dequeSize) % windowCents.length;
+        dequeTicks[tail] = ticks;
+        dequePrices[tail] = price;
+        dequeSize += 1;
+        ticks += 1;
+    }
+
+    /**
+     * Gets the number of prices seen so far.
+     *
+     * @return the number of prices
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Gets the number of prices currently in the window.
+     *
+     * @return the number of prices in the window
+     */
+    public int getWindowCount() {
+        return (int) Math.min(ticks, windowCents.length);
+    }
+
+    /**
+     * Gets the average of the prices in the window.
+     *
+     * @return the average price, or NaN if no price was seen
+     */
+    public double getAverage() {
+        return windowSum / 100.0 / getWindowCount();
+    }
+
+    /**
+     * Gets the maximum of the prices in the window.
+     *
+     * @return the maximum price, or NaN if no price was seen
+     */
+    public float getMaximum() {
+        return dequeSize == 0 ? Float.NaN : dequePrices[dequeHead];
+    }
+
+    /**
+     * Gets the sum of every price seen, in cents.
+     *
+     * @return the cumulative sum in cents
+     */
+    public long getCumulativeSumCents() {
+        return cumulativeSum;
+    }
+}
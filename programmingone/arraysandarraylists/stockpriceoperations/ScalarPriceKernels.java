@@ -0,0 +1,91 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * The ScalarPriceKernels class processes one price at a time.
+ * It runs on every JVM and is the fallback of the vector kernels.
+ */
+final class ScalarPriceKernels implements PriceKernels {
+    private static final int SUM_BLOCK_SIZE = 1 << 10;
+
+    @Override
+    public float sum(ByteBuffer chunk, int length) {
+        float sum = 0;
+
+        for (int index = 0; index < length; index += 1) {
+            sum += chunk.getFloat(index << 2);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Copies the prices in blocks to an array, adds every block in double
+     * precision with four independent sums and combines the blocks with
+     * Kahan-Neumaier summation, so the loop has no branch and no single
+     * dependency chain. A double carries 29 more bits than a float price,
+     * so the rounding error of a block stays far below the last bit of its sum.
+     */
+    @Override
+    public double compensatedSum(ByteBuffer chunk, int length) {
+        CompensatedSum sum = new CompensatedSum();
+        FloatBuffer prices = chunk.asFloatBuffer();
+        float[] block = new float[SUM_BLOCK_SIZE];
+
+        for (int start = 0; start < length; start += SUM_BLOCK_SIZE) {
+            int blockLength = Math.min(SUM_BLOCK_SIZE, length - start);
+            prices.get(start, block, 0, blockLength);
+
+            double sum0 = 0;
+            double sum1 = 0;
+            double sum2 = 0;
+            double sum3 = 0;
+            int index = 0;
+
+            for (; index + 3 < blockLength; index += 4) {
+                sum0 += block[index];
+                sum1 += block[index + 1];
+                sum2 += block[index + 2];
+                sum3 += block[index + 3];
+            }
+
+            for (; index < blockLength; index += 1) {
+                sum0 += block[index];
+            }
+
+            sum.add((sum0 + sum1) + (sum2 + sum3));
+        }
+
+        return sum.getValue();
+    }
+
+    @Override
+    public float max(ByteBuffer chunk, int length, float initial) {
+        float greater = initial;
+
+        for (int index = 0; index < length; index += 1) {
+            float value = chunk.getFloat(index << 2);
+
+            if (value > greater) {
+                greater = value;
+            }
+        }
+
+        return greater;
+    }
+
+    @Override
+    public long count(ByteBuffer chunk, int length, float target) {
+        long counter = 0;
+
+        for (int index = 0; index < length; index += 1) {
+            if (chunk.getFloat(index << 2) == target) {
+                counter += 1;
+            }
+        }
+
+        return counter;
+    }
+}
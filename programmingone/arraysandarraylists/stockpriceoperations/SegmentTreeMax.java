@@ -0,0 +1,140 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.util.Arrays;
+
+/**
+ * The SegmentTreeMax class answers maximum queries over any range of a
+ * series that keeps growing. Every node of the tree keeps the maximum of
+ * its two children, so appending a price and querying a range both take
+ * O(log n). It takes at most 4 floats per price, so it also answers the
+ * queries of series whose SparseTableMax would be too large.
+ * Like the maximum operation, NaN prices are ignored.
+ */
+public final class SegmentTreeMax {
+    static final int MAX_SIZE = 1 << 29;
+
+    private float[] tree;
+    private int capacity;
+    private int size;
+
+    /**
+     * Creates an empty tree.
+     */
+    public SegmentTreeMax() {
+        tree = new float[2];
+        capacity = 1;
+        size = 0;
+    }
+
+    /**
+     * Builds the tree of a series in O(n).
+     *
+     * @param series the series of prices
+     * @throws IllegalArgumentException if the series has more than MAX_SIZE prices
+     */
+    public SegmentTreeMax(PriceSeries series) {
+        if (series.size() > MAX_SIZE) {
+            throw new IllegalArgumentException("The series must have at most " + MAX_SIZE + " prices.");
+        }
+
+        size = (int) series.size();
+        capacity = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        tree = new float[capacity << 1];
+        Arrays.fill(tree, capacity + size, tree.length, Float.NaN);
+
+        for (int chunkIndex = 0, leaf = capacity; chunkIndex < series.chunkCount(); chunkIndex += 1) {
+            int length = series.chunkLength(chunkIndex);
+            series.chunk(chunkIndex).asFloatBuffer().get(0, tree, leaf, length);
+            leaf += length;
+        }
+
+        for (int node = capacity - 1; node > 0; node -= 1) {
+            tree[node] = PriceKernels.greater(tree[node << 1], tree[(node << 1) + 1]);
+        }
+    }
+
+    /**
+     * Adds a price at the end of the series.
+     *
+     * @param price the price to add
+     * @throws IllegalStateException if the tree already holds MAX_SIZE prices
+     */
+    public void append(float price) {
+        if (size == capacity) {
+            grow();
+        }
+
+        int node = capacity + size;
+        tree[node] = price;
+        size += 1;
+
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            tree[node] = PriceKernels.greater(tree[node << 1], tree[(node << 1) + 1]);
+        }
+    }
+
+    /**
+     * Gets the number of prices in the tree.
+     *
+     * @return the size of the series
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the maximum price between two positions.
+     *
+     * @param from the zero-based position of the first price, inclusive
+     * @param to   the zero-based position of the last price, inclusive
+     * @return the maximum price of the range
+     * @throws IndexOutOfBoundsException if the range is not inside the series
+     */
+    public float max(int from, int to) {
+        if (from < 0 || to >= size || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " out of bounds for size " + size);
+        }
+
+        float greater = Float.NaN;
+        int left = from + capacity;
+        int right = to + capacity + 1;
+
+        while (left < right) {
+            if ((left & 1) == 1) {
+                greater = PriceKernels.greater(greater, tree[left]);
+                left += 1;
+            }
+
+            if ((right & 1) == 1) {
+                right -= 1;
+                greater = PriceKernels.greater(greater, tree[right]);
+            }
+
+            left >>>= 1;
+            right >>>= 1;
+        }
+
+        return greater;
+    }
+
+    /**
+     * Doubles the number of leaves and rebuilds the inner nodes.
+     */
+    private void grow() {
+        if (capacity == MAX_SIZE) {
+            throw new IllegalStateException("A segment tree holds at most " + MAX_SIZE + " prices.");
+        }
+
+        int newCapacity = capacity << 1;
+        float[] newTree = new float[newCapacity << 1];
+        Arrays.fill(newTree, Float.NaN);
+        System.arraycopy(tree, capacity, newTree, newCapacity, size);
+
+        for (int node = newCapacity - 1; node > 0; node -= 1) {
+            newTree[node] = PriceKernels.greater(newTree[node << 1], newTree[(node << 1) + 1]);
+        }
+
+        tree = newTree;
+        capacity = newCapacity;
+    }
+}
@@ -0,0 +1,184 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The SeriesCache class keeps recently used price series with the results
+ * computed from them, so running several operations on the same input does
+ * not parse or scan it again.
+ * <p>
+ * Series are found by the content of their input: the text typed by the user,
+ * or a key made of the path, size and modification time of a file. Results
+ * are found by the series they were computed from. Entries are evicted in
+ * least recently used order once the estimated memory of the series and of
+ * their results goes over the capacity, which is read from the
+ * {@code stockprice.cacheBytes} system property.
+ */
+final class SeriesCache {
+    static final String CAPACITY_PROPERTY = "stockprice.cacheBytes";
+    static final long DEFAULT_CAPACITY = 256L << 20;
+    private static final long SMALL_RESULT_BYTES = 16;
+
+    /**
+     * The results that can be kept for a series.
+     */
+    enum Aggregate {
+        AVERAGE,
+        MAXIMUM,
+        CUMULATIVE_SUM
+    }
+
+    /**
+     * A cached series with its results and its estimated memory.
+     */
+    private static class Entry {
+        private final String key;
+        private final PriceSeries series;
+        private final Map<Aggregate, Object> results = new EnumMap<>(Aggregate.class);
+        private long bytes;
+
+        Entry(String key, PriceSeries series) {
+            this.key = key;
+            this.series = series;
+            this.bytes = 2L * key.length() + series.memoryBytes();
+        }
+    }
+
+    private final long capacity;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final IdentityHashMap<PriceSeries, Entry> entriesBySeries = new IdentityHashMap<>();
+    private long usedBytes = 0;
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the maximum estimated memory of the cached entries, in bytes
+     */
+    SeriesCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the series cached for an input, marking it as recently used.
+     *
+     * @param key the content of the input
+     * @return the cached series, or null if the input is not cached
+     */
+    PriceSeries getSeries(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.series;
+    }
+
+    /**
+     * Caches the series parsed from an input, replacing any series cached for the same input.
+     *
+     * @param key    the content of the input
+     * @param series the series parsed from the input
+     */
+    void putSeries(String key, PriceSeries series) {
+        remove(entries.get(key));
+        remove(entriesBySeries.get(series));
+
+        Entry entry = new Entry(key, series);
+        entries.put(key, entry);
+        entriesBySeries.put(series, entry);
+        usedBytes += entry.bytes;
+        evict();
+    }
+
+    /**
+     * Gets a result of a series, computing it only if it is not cached.
+     * Results of series that are not cached are always computed.
+     *
+     * @param series    the series the result is computed from
+     * @param aggregate the kind of result
+     * @param compute   computes the result
+     * @param <T>       the type of the result
+     * @return the result
+     */
+    <T> T getAggregate(PriceSeries series, Aggregate aggregate, Supplier<T> compute) {
+        Entry entry = entriesBySeries.get(series);
+
+        if (entry == null) return compute.get();
+
+        entries.get(entry.key);
+
+        @SuppressWarnings("unchecked")
+        T result = (T) entry.results.get(aggregate);
+
+        if (result == null) {
+            result = compute.get();
+            long bytes = estimateBytes(result);
+            entry.results.put(aggregate, result);
+            entry.bytes += bytes;
+            usedBytes += bytes;
+            evict();
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the estimated memory of the cached entries.
+     *
+     * @return the memory in bytes
+     */
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Gets the number of cached series.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits its capacity.
+     */
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (usedBytes > capacity && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            entriesBySeries.remove(eldest.series);
+            usedBytes -= eldest.bytes;
+        }
+    }
+
+    /**
+     * Removes an entry from the cache.
+     *
+     * @param entry the entry to remove, or null
+     */
+    private void remove(Entry entry) {
+        if (entry == null) return;
+
+        entries.remove(entry.key);
+        entriesBySeries.remove(entry.series);
+        usedBytes -= entry.bytes;
+    }
+
+    /**
+     * Estimates the memory of a result.
+     *
+     * @param result the result
+     * @return the memory in bytes
+     */
+    private static long estimateBytes(Object result) {
+        if (result instanceof CentsSeries cents) {
+            return cents.memoryBytes();
+        }
+
+        return SMALL_RESULT_BYTES;
+    }
+}
@@ -0,0 +1,135 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.util.Arrays;
+
+/**
+ * The SortedPriceIndex class keeps a sorted copy of a series that no longer
+ * changes, so counting the prices between two values and finding the price
+ * nearest to a value take two binary searches instead of a full scan.
+ * The copy is sorted in parallel and lives on the heap, so it is limited to
+ * series that fit in a Java array. NaN prices are kept out of every query.
+ */
+public final class SortedPriceIndex {
+    private final float[] prices;
+    private final int length;
+
+    /**
+     * Builds the index of a series.
+     *
+     * @param series the series of prices
+     * @throws IllegalArgumentException if the series does not fit in a Java array
+     */
+    public SortedPriceIndex(PriceSeries series) {
+        if (series.size() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The series must have at most 2^31 - 9 prices.");
+        }
+
+        prices = new float[(int) series.size()];
+        int offset = 0;
+
+        for (int chunkIndex = 0; chunkIndex < series.chunkCount(); chunkIndex += 1) {
+            int chunkLength = series.chunkLength(chunkIndex);
+            series.chunk(chunkIndex).asFloatBuffer().get(prices, offset, chunkLength);
+            offset += chunkLength;
+        }
+
+        Arrays.parallelSort(prices);
+
+        int end = prices.length;
+
+        while (end > 0 && Float.isNaN(prices[end - 1])) {
+            end -= 1;
+        }
+
+        length = end;
+    }
+
+    /**
+     * Gets the number of prices in the index, NaN prices excluded.
+     *
+     * @return the number of prices
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Counts the prices between two values.
+     *
+     * @param low  the lowest price, inclusive
+     * @param high the highest price, inclusive
+     * @return the number of prices from low to high, or 0 if low is greater than high
+     */
+    public int countBetween(float low, float high) {
+        if (!(low <= high)) return 0;
+
+        return firstGreater(high) - firstNotLess(low);
+    }
+
+    /**
+     * Finds the price nearest to a value. When two prices are as near,
+     * the lower one is returned.
+     *
+     * @param price the value to look for
+     * @return the nearest price, or NaN if the index is empty or the value is NaN
+     */
+    public float nearest(float price) {
+        if (length == 0 || Float.isNaN(price)) return Float.NaN;
+
+        int index = firstNotLess(price);
+
+        if (index == length) return prices[length - 1];
+
+        if (index == 0) return prices[0];
+
+        float below = prices[index - 1];
+        float above = prices[index];
+        return (double) price - below <= (double) above - price ? below : above;
+    }
+
+    /**
+     * Finds the first position whose price is not less than a value.
+     *
+     * @param price the value
+     * @return the position, or the size of the index if every price is less
+     */
+    private int firstNotLess(float price) {
+        int low = 0;
+        int high = length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (prices[middle] < price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Finds the first position whose price is greater than a value.
+     *
+     * @param price the value
+     * @return the position, or the size of the index if no price is greater
+     */
+    private int firstGreater(float price) {
+        int low = 0;
+        int high = length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (prices[middle] <= price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,92 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+/**
+ * The SparseTableMax class answers maximum queries over any range of a
+ * series that no longer changes in constant time. Level k of the table keeps
+ * the maximum of every run of 2^k prices, so any range is covered by two
+ * overlapping runs. The table takes n log n floats on the heap, so it is
+ * limited to MAX_TABLE_BYTES, about 3.2 million prices; longer series are
+ * better served by a SegmentTreeMax, which only takes O(n) floats.
+ * Like the maximum operation, NaN prices are ignored.
+ */
+public final class SparseTableMax {
+    static final long MAX_TABLE_BYTES = 1L << 28;
+
+    private final float[][] levels;
+
+    /**
+     * Builds the table of a series.
+     *
+     * @param series the series of prices
+     * @throws IllegalArgumentException if the series is empty or its table would exceed MAX_TABLE_BYTES
+     */
+    public SparseTableMax(PriceSeries series) {
+        if (series.isEmpty() || !fits(series.size())) {
+            throw new IllegalArgumentException("The table of " + series.size()
+                + " prices would not fit in " + MAX_TABLE_BYTES + " bytes.");
+        }
+
+        int size = (int) series.size();
+        int levelCount = 32 - Integer.numberOfLeadingZeros(size);
+        levels = new float[levelCount][];
+        levels[0] = new float[size];
+
+        for (int index = 0; index < size; index += 1) {
+            levels[0][index] = series.get(index);
+        }
+
+        for (int level = 1; level < levelCount; level += 1) {
+            float[] previous = levels[level - 1];
+            int half = 1 << (level - 1);
+            float[] current = new float[size - (1 << level) + 1];
+
+            for (int index = 0; index < current.length; index += 1) {
+                current[index] = PriceKernels.greater(previous[index], previous[index + half]);
+            }
+
+            levels[level] = current;
+        }
+    }
+
+    /**
+     * Gets the number of prices covered by the table.
+     *
+     * @return the size of the series
+     */
+    public int size() {
+        return levels[0].length;
+    }
+
+    /**
+     * Finds the maximum price between two positions.
+     *
+     * @param from the zero-based position of the first price, inclusive
+     * @param to   the zero-based position of the last price, inclusive
+     * @return the maximum price of the range
+     * @throws IndexOutOfBoundsException if the range is not inside the series
+     */
+    public float max(int from, int to) {
+        if (from < 0 || to >= size() || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " out of bounds for size " + size());
+        }
+
+        int level = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        return PriceKernels.greater(levels[level][from], levels[level][to - (1 << level) + 1]);
+    }
+
+    /**
+     * Checks whether the table of a series of a given size fits in MAX_TABLE_BYTES.
+     *
+     * @param size the number of prices
+     * @return true if a table can be built for the series
+     */
+    static boolean fits(long size) {
+        long bytes = 0;
+
+        for (long run = 1; run <= size && bytes <= MAX_TABLE_BYTES; run <<= 1) {
+            bytes += 4 * (size - run + 1);
+        }
+
+        return bytes <= MAX_TABLE_BYTES;
+    }
+}
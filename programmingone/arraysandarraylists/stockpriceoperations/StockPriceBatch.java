@@ -0,0 +1,251 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+/**
+ * The StockPriceBatch class runs stock price operations from a list of
+ * commands, one per line, without any menu or prompt. Input files are
+ * loaded through the same series cache as the menu, so a file is only read
+ * again once it was modified or evicted.
+ * <p>
+ * Every command prints one tab separated line: the line number, the
+ * command name, {@code ok} or {@code error}, and the result or the error
+ * message. Prices are printed to 2 decimal places and lists are comma
+ * separated. Positions start at 1, as in the menu.
+ * <pre>
+ * average &lt;file&gt;
+ * max &lt;file&gt;
+ * count &lt;file&gt; &lt;price&gt;
+ * cumsum &lt;file&gt;
+ * rangesum &lt;file&gt; &lt;from&gt; &lt;to&gt;
+ * rangeavg &lt;file&gt; &lt;from&gt; &lt;to&gt;
+ * rangemax &lt;file&gt; &lt;from&gt; &lt;to&gt;
+ * top &lt;file&gt; &lt;k&gt;
+ * percentiles &lt;file&gt;
+ * between &lt;file&gt; &lt;low&gt; &lt;high&gt;
+ * nearest &lt;file&gt; &lt;price&gt;
+ * </pre>
+ * Blank lines and lines starting with # are skipped.
+ */
+public final class StockPriceBatch {
+    private final PrintStream out;
+
+    /**
+     * Creates a batch runner.
+     *
+     * @param out the stream where the results are printed
+     */
+    public StockPriceBatch(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Runs every command read from a reader, then closes it.
+     *
+     * @param commands the reader of the commands
+     * @throws IOException if the commands cannot be read
+     */
+    public void run(Reader commands) throws IOException {
+        try (BufferedReader reader = new BufferedReader(commands)) {
+            String line;
+            long lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber += 1;
+                String trimmed = line.trim();
+
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+                String[] words = trimmed.split("\\s+");
+
+                try {
+                    String result = execute(words);
+                    out.printf("%d\t%s\tok\t%s%n", lineNumber, words[0], result);
+                } catch (IOException e) {
+                    out.printf("%d\t%s\terror\tCannot read the file: %s%n", lineNumber, words[0], e.getMessage());
+                } catch (RuntimeException e) {
+                    out.printf("%d\t%s\terror\t%s%n", lineNumber, words[0], e.getMessage());
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Runs a single command.
+     *
+     * @param words the command name followed by its arguments
+     * @return the result of the command
+     * @throws IOException              if the input file cannot be read
+     * @throws IllegalArgumentException if the command or its arguments are invalid
+     */
+    private String execute(String[] words) throws IOException {
+        String command = words[0];
+
+        switch (command) {
+            case "average" -> {
+                requireArguments(words, 1);
+                return formatPrice(StockPriceOperator.calculateAverage(getSeries(words[1])));
+            }
+            case "max" -> {
+                requireArguments(words, 1);
+                return formatPrice(StockPriceOperator.getGreaterFloat(getSeries(words[1])));
+            }
+            case "count" -> {
+                requireArguments(words, 2);
+                PriceSeries series = getSeries(words[1]);
+                return Long.toString(StockPriceOperator.countOccurrence(Float.parseFloat(words[2]), series));
+            }
+            case "cumsum" -> {
+                requireArguments(words, 1);
+                CentsSeries cumulativeList = StockPriceOperator.getCumulativeSum(getSeries(words[1]));
+                StringBuilder string = new StringBuilder();
+
+                for (long index = 0; index < cumulativeList.size(); index += 1) {
+                    if (index > 0) string.append(',');
+                    string.append(PriceCents.format(cumulativeList.get(index)));
+                }
+
+                return string.toString();
+            }
+            case "rangesum", "rangeavg", "rangemax" -> {
+                requireArguments(words, 3);
+                PriceSeries series = getSeries(words[1]);
+                long from = parsePosition(words[2], series.size());
+                long to = parsePosition(words[3], series.size());
+
+                if (from > to) {
+                    throw new IllegalArgumentException("The first position must not be after the last position.");
+                }
+
+                if (command.equals("rangesum")) {
+                    return PriceCents.format(StockPriceOperator.getPrefixSumIndex(series).rangeSumCents(from, to));
+                }
+
+                if (command.equals("rangeavg")) {
+                    return String.format("%.2f", StockPriceOperator.getPrefixSumIndex(series).rangeAverage(from, to));
+                }
+
+                if (series.size() > SegmentTreeMax.MAX_SIZE) {
+                    throw new IllegalArgumentException("The series is too long for range maximum queries.");
+                }
+
+                return formatPrice(StockPriceOperator.getRangeMaximum(series, (int) from, (int) to));
+            }
+            case "top" -> {
+                requireArguments(words, 2);
+                PriceHistogram histogram = StockPriceOperator.getPriceHistogram(getSeries(words[1]));
+                int k = Integer.parseInt(words[2]);
+
+                if (k <= 0) {
+                    throw new IllegalArgumentException("The number of prices must be positive.");
+                }
+
+                StringBuilder string = new StringBuilder();
+
+                for (PriceHistogram.Entry entry : histogram.topK(k)) {
+                    if (string.length() > 0) string.append(',');
+                    string.append(formatPrice(entry.getPrice())).append(':').append(entry.getCount());
+                }
+
+                return string.toString();
+            }
+            case "percentiles" -> {
+                requireArguments(words, 1);
+                QuantileSketch sketch = QuantileSketch.of(getSeries(words[1]));
+                return String.format("%s,%s,%s", formatPrice(sketch.quantile(0.5)),
+                    formatPrice(sketch.quantile(0.95)), formatPrice(sketch.quantile(0.99)));
+            }
+            case "between", "nearest" -> {
+                requireArguments(words, command.equals("between") ? 3 : 2);
+                PriceSeries series = getSeries(words[1]);
+
+                if (series.size() > Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("The series is too long to be sorted.");
+                }
+
+                SortedPriceIndex index = StockPriceOperator.getSortedPriceIndex(series);
+
+                if (command.equals("between")) {
+                    return Integer.toString(index.countBetween(Float.parseFloat(words[2]), Float.parseFloat(words[3])));
+                }
+
+                return formatPrice(index.nearest(Float.parseFloat(words[2])));
+            }
+            default -> throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    /**
+     * Gets the series of a file through the series cache.
+     *
+     * @param fileName the path of the file
+     * @return the series of the file
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file has no price
+     */
+    private static PriceSeries getSeries(String fileName) throws IOException {
+        PriceSeries series;
+
+        try {
+            series = StockPriceOperator.getCachedFileSeries(Path.of(fileName));
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException("Invalid file: " + fileName);
+        }
+
+        if (series.isEmpty()) {
+            throw new IllegalArgumentException("The file does not contain any price: " + fileName);
+        }
+
+        return series;
+    }
+
+    /**
+     * Checks that a command has the expected number of arguments.
+     *
+     * @param words the command name followed by its arguments
+     * @param count the expected number of arguments
+     * @throws IllegalArgumentException if the number of arguments is different
+     */
+    private static void requireArguments(String[] words, int count) {
+        if (words.length != count + 1) {
+            throw new IllegalArgumentException(String.format("%s expects %d argument(s)", words[0], count));
+        }
+    }
+
+    /**
+     * Parses a 1-based position of a series.
+     *
+     * @param text the position to parse
+     * @param size the size of the series
+     * @return the zero-based position
+     * @throws IllegalArgumentException if the position is not inside the series
+     */
+    private static long parsePosition(String text, long size) {
+        long position = Long.parseLong(text);
+
+        if (position < 1 || position > size) {
+            throw new IllegalArgumentException(String.format("The position must be from 1 to %d.", size));
+        }
+
+        return position - 1;
+    }
+
+    /**
+     * Formats a price rounded half up to 2 decimal places.
+     *
+     * @param price the price to format
+     * @return the formatted price
+     */
+    private static String formatPrice(float price) {
+        if (Float.isNaN(price) || Float.isInfinite(price)) return Float.toString(price);
+
+        return PriceCents.format(PriceCents.toCents(price));
+    }
+}
@@ -0,0 +1,387 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * The StockPriceBenchmark class measures the hot loops of the stock price
+ * operations: the average, the maximum, the occurrence count, the cumulative
+ * sum and the parsing of prices. Every operation is measured for every input
+ * size and price distribution, after warming up, and the results are printed
+ * as tab separated lines.
+ * <p>
+ * The parallelism of ParallelAggregator is fixed when the class is loaded, so
+ * every thread count is measured in a new JVM started with the same options
+ * and the matching {@code stockprice.parallelism} system property.
+ * <p>
+ * Allocation is the heap memory allocated by every thread per operation,
+ * read from the JVM. Direct memory used by the series is not included.
+ * <pre>
+ * --sizes 1K,1M,100M        the number of prices, with an optional K or M suffix
+ * --distributions uniform   uniform, walk or repeated
+ * --threads 1,8             the thread counts
+ * --operations average,max  average, max, count, cumsum or parse
+ * </pre>
+ */
+public final class StockPriceBenchmark {
+    private static final String DEFAULT_SIZES = "1K,1M,10M";
+    private static final String DEFAULT_OPERATIONS = "average,max,count,cumsum,parse";
+    private static final String FORK_OPTION = "--fork";
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+    private static final long MINIMUM_ITERATION_NANOS = 100_000_000L;
+    private static final long MAXIMUM_MATERIALIZED_SIZE = 10_000_000L;
+    private static final long SEED = 42;
+
+    private static volatile long sink;
+
+    /**
+     * How the prices of a benchmark are generated.
+     */
+    enum Distribution {
+        UNIFORM,
+        WALK,
+        REPEATED
+    }
+
+    private StockPriceBenchmark() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Runs the benchmarks with the given command line arguments.
+     *
+     * @param args command line arguments
+     * @throws IOException          if a forked JVM cannot be started
+     * @throws InterruptedException if interrupted while waiting for a forked JVM
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String sizes = DEFAULT_SIZES;
+        String distributions = "uniform,walk,repeated";
+        String threads = "1," + Runtime.getRuntime().availableProcessors();
+        String operations = DEFAULT_OPERATIONS;
+        boolean isFork = false;
+
+        for (int index = 0; index < args.length; index += 1) {
+            String option = args[index];
+
+            if (option.equals(FORK_OPTION)) {
+                isFork = true;
+                continue;
+            }
+
+            if (index + 1 == args.length) {
+                System.err.println("Missing value for " + option);
+                return;
+            }
+
+            String value = args[++index];
+
+            switch (option) {
+                case "--sizes" -> sizes = value;
+                case "--distributions" -> distributions = value;
+                case "--threads" -> threads = value;
+                case "--operations" -> operations = value;
+                default -> {
+                    System.err.println("Unknown option: " + option);
+                    return;
+                }
+            }
+        }
+
+        if (isFork) {
+            runAll(parseSizes(sizes), parseDistributions(distributions), operations.split(","));
+            return;
+        }
+
+        System.out.println("threads\toperation\tdistribution\tsize\tns/op\tstddev\tMprices/s\tbytes/op");
+
+        for (String threadCount : threads.split(",")) {
+            int exitCode = fork(Integer.parseInt(threadCount.trim()), sizes, distributions, operations);
+
+            if (exitCode != 0) {
+                System.err.printf("The benchmark with %s thread(s) failed with exit code %d%n", threadCount, exitCode);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmarks in a new JVM with the given number of threads.
+     *
+     * @param threadCount   the parallelism of the new JVM
+     * @param sizes         the sizes option
+     * @param distributions the distributions option
+     * @param operations    the operations option
+     * @return the exit code of the new JVM
+     * @throws IOException          if the JVM cannot be started
+     * @throws InterruptedException if interrupted while waiting for the JVM
+     */
+    private static int fork(int threadCount, String sizes, String distributions, String operations)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command()
+            .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!argument.startsWith("-D" + ParallelAggregator.PARALLELISM_PROPERTY + "=")) {
+                command.add(argument);
+            }
+        }
+
+        command.add("-D" + ParallelAggregator.PARALLELISM_PROPERTY + "=" + threadCount);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StockPriceBenchmark.class.getName());
+        command.addAll(List.of(FORK_OPTION, "--sizes", sizes, "--distributions", distributions,
+            "--operations", operations));
+
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+
+    /**
+     * Runs every operation for every size and distribution in this JVM.
+     *
+     * @param sizes         the numbers of prices
+     * @param distributions the distributions of prices
+     * @param operations    the names of the operations
+     */
+    private static void runAll(long[] sizes, Distribution[] distributions, String[] operations) {
+        int threadCount = Integer.getInteger(ParallelAggregator.PARALLELISM_PROPERTY,
+            Runtime.getRuntime().availableProcessors());
+
+        for (long size : sizes) {
+            for (Distribution distribution : distributions) {
+                PriceSeries series = generate(distribution, size);
+                ByteBuffer text = null;
+
+                for (String name : operations) {
+                    String operation = name.trim();
+
+                    if ((operation.equals("cumsum") || operation.equals("parse")) && size > MAXIMUM_MATERIALIZED_SIZE) {
+                        continue;
+                    }
+
+                    if (operation.equals("parse") && text == null) {
+                        text = render(series);
+                    }
+
+                    LongSupplier body = getOperation(operation, series, text);
+                    double[] result = measure(body);
+                    System.out.printf(Locale.ROOT, "%d\t%s\t%s\t%d\t%.1f\t%.1f\t%.1f\t%.1f%n", threadCount, operation,
+                        distribution.name().toLowerCase(Locale.ROOT), size, result[0], result[1],
+                        size * 1_000.0 / result[0], result[2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the body of an operation.
+     *
+     * @param operation the name of the operation
+     * @param series    the prices of the benchmark
+     * @param text      the prices as text, for the parse operation
+     * @return the body, returning a value that must not be optimised away
+     * @throws IllegalArgumentException if the operation is unknown
+     */
+    private static LongSupplier getOperation(String operation, PriceSeries series, ByteBuffer text) {
+        float target = series.get(series.size() / 2);
+
+        return switch (operation) {
+            case "average" -> () -> Float.floatToRawIntBits(StockPriceOperator.calculateAverage(series));
+            case "max" -> () -> Float.floatToRawIntBits(StockPriceOperator.getGreaterFloat(series));
+            case "count" -> () -> StockPriceOperator.countOccurrence(target, series);
+            case "cumsum" -> () -> StockPriceOperator.getCumulativeSum(series).size();
+            case "parse" -> () -> {
+                PriceSeries parsed = new PriceSeries();
+                PriceParser parser = new PriceParser();
+                parser.feed(text.duplicate(), parsed::append);
+                parser.finish(parsed::append);
+                return parsed.size();
+            };
+            default -> throw new IllegalArgumentException("Unknown operation: " + operation);
+        };
+    }
+
+    /**
+     * Warms an operation up and measures it.
+     *
+     * @param body the operation to measure
+     * @return the mean time in nanoseconds, its standard deviation and the allocated bytes, per operation
+     */
+    private static double[] measure(LongSupplier body) {
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration += 1) {
+            runIteration(body);
+        }
+
+        double[] times = new double[MEASUREMENT_ITERATIONS];
+        double allocated = 0;
+
+        for (int iteration = 0; iteration < MEASUREMENT_ITERATIONS; iteration += 1) {
+            double[] result = runIteration(body);
+            times[iteration] = result[0];
+            allocated += result[1];
+        }
+
+        double mean = 0;
+
+        for (double time : times) {
+            mean += time;
+        }
+
+        mean /= times.length;
+        double variance = 0;
+
+        for (double time : times) {
+            variance += (time - mean) * (time - mean);
+        }
+
+        return new double[] {mean, Math.sqrt(variance / (times.length - 1)), allocated / times.length};
+    }
+
+    /**
+     * Runs an operation repeatedly for at least the minimum iteration time.
+     *
+     * @param body the operation to run
+     * @return the time in nanoseconds and the allocated bytes, per operation
+     */
+    private static double[] runIteration(LongSupplier body) {
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        long operations = 0;
+        long result = 0;
+
+        do {
+            result += body.getAsLong();
+            operations += 1;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MINIMUM_ITERATION_NANOS);
+
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        sink += result;
+        return new double[] {(double) elapsed / operations, Math.max(0, allocated) / (double) operations};
+    }
+
+    /**
+     * Gets the heap memory allocated so far by every live thread.
+     *
+     * @return the allocated bytes, or 0 if the JVM does not measure allocation
+     */
+    private static long getAllocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported()) {
+            return 0;
+        }
+
+        long total = 0;
+
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) total += allocated;
+        }
+
+        return total;
+    }
+
+    /**
+     * Generates a series of prices with 2 decimal places.
+     *
+     * @param distribution how the prices are spread
+     * @param size         the number of prices
+     * @return the generated series
+     */
+    private static PriceSeries generate(Distribution distribution, long size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        PriceSeries series = new PriceSeries();
+        long cents = 10_000;
+
+        for (long index = 0; index < size; index += 1) {
+            switch (distribution) {
+                case UNIFORM -> cents = random.nextLong(1, 50_001);
+                case WALK -> cents = Math.max(1, cents + random.nextLong(-25, 26));
+                case REPEATED -> cents = 9_900 + random.nextInt(100) * 5;
+            }
+
+            series.append(PriceCents.toFloat(cents));
+        }
+
+        return series;
+    }
+
+    /**
+     * Renders a series as lines of text, as read from a file.
+     *
+     * @param series the series to render
+     * @return a direct buffer holding the text
+     */
+    private static ByteBuffer render(PriceSeries series) {
+        StringBuilder text = new StringBuilder();
+
+        for (long index = 0; index < series.size(); index += 1) {
+            text.append(series.get(index)).append('\n');
+        }
+
+        byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    }
+
+    /**
+     * Parses a comma separated list of sizes, each with an optional K or M suffix.
+     *
+     * @param sizes the list of sizes
+     * @return the sizes
+     * @throws NumberFormatException if a size is invalid
+     */
+    private static long[] parseSizes(String sizes) {
+        String[] parts = sizes.split(",");
+        long[] result = new long[parts.length];
+
+        for (int index = 0; index < parts.length; index += 1) {
+            String part = parts[index].trim().toUpperCase(Locale.ROOT);
+            long multiplier = 1;
+
+            if (part.endsWith("K")) {
+                multiplier = 1_000;
+            } else if (part.endsWith("M")) {
+                multiplier = 1_000_000;
+            }
+
+            if (multiplier > 1) part = part.substring(0, part.length() - 1);
+
+            result[index] = Long.parseLong(part) * multiplier;
+
+            if (result[index] <= 0) {
+                throw new NumberFormatException("The size must be positive: " + parts[index]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a comma separated list of distributions.
+     *
+     * @param distributions the list of distributions
+     * @return the distributions
+     * @throws IllegalArgumentException if a distribution is unknown
+     */
+    private static Distribution[] parseDistributions(String distributions) {
+        String[] parts = distributions.split(",");
+        Distribution[] result = new Distribution[parts.length];
+
+        for (int index = 0; index < parts.length; index += 1) {
+            result[index] = Distribution.valueOf(parts[index].trim().toUpperCase(Locale.ROOT));
+        }
+
+        return result;
+    }
+}
@@ -1,8 +1,19 @@
 package programmingone.arraysandarraylists.stockpriceoperations;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 
 /**
  * The StockPriceOperator class provides a console-based interface
@@ -12,14 +23,230 @@ import java.util.Scanner;
  */
 public class StockPriceOperator {
     private static final Scanner scanner = new Scanner(System.in);
+    private static final PriceKernels kernels = PriceKernels.get();
+    private static PriceSeries loadedSeries = new PriceSeries();
+    private static String loadedFileName = "";
+    private static PriceSeries indexedSeries = null;
+    private static PrefixSumIndex prefixSumIndex = null;
+    private static PriceSeries maxIndexedSeries = null;
+    private static SparseTableMax sparseTableMax = null;
+    private static SegmentTreeMax segmentTreeMax = null;
+    private static PriceSeries histogramSeries = null;
+    private static PriceHistogram priceHistogram = null;
+    private static PriceSeries sortedSeries = null;
+    private static SortedPriceIndex sortedPriceIndex = null;
+    private static final SeriesCache seriesCache = new SeriesCache(
+        Long.getLong(SeriesCache.CAPACITY_PROPERTY, SeriesCache.DEFAULT_CAPACITY));
+    private static final int LAST_OPTION = 12;
 
     /**
      * The main method that starts the program.
+     * With {@code --stream <window> <interval> [file]} it prints rolling statistics
+     * of the prices piped into the standard input, or appended to the file,
+     * with {@code --symbols <file>} it prints the statistics of every symbol of
+     * a file of symbol,price ticks, with {@code --bars <file> [resolutions]} it
+     * prints the OHLC bars of a file of timestamped ticks, with
+     * {@code --batch <file>} it runs the commands of a file, and with
+     * {@code --ingest <directory> [readers] [parsers]} it merges every price
+     * file of a directory, instead of showing the menu.
      *
      * @param args command line arguments
      */
     public static void main(String[] args) {
-        startProgram();
+        String mode = args.length > 0 ? args[0] : "";
+
+        switch (mode) {
+            case "--stream" -> doStream(args);
+            case "--symbols" -> doSymbols(args);
+            case "--bars" -> doBars(args);
+            case "--batch" -> doBatch(args);
+            case "--ingest" -> doIngest(args);
+            default -> startProgram();
+        }
+    }
+
+    /**
+     * Runs the commands of a file, or of the standard input, with the given command line arguments.
+     *
+     * @param args command line arguments, starting with --batch
+     */
+    private static void doBatch(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: --batch <file>, or --batch - to read the standard input");
+            return;
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+        StockPriceBatch batch = new StockPriceBatch(out);
+
+        try {
+            if (args[1].equals("-")) {
+                batch.run(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            } else {
+                batch.run(Files.newBufferedReader(Path.of(args[1]), StandardCharsets.UTF_8));
+            }
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("The commands could not be read: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merges every price file of a directory with the given command line arguments.
+     *
+     * @param args command line arguments, starting with --ingest
+     */
+    private static void doIngest(String[] args) {
+        String usage = "Usage: --ingest <directory> [reader threads] [parser threads]";
+
+        if (args.length < 2 || args.length > 4) {
+            System.err.println(usage);
+            return;
+        }
+
+        try {
+            int readers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+            int parsers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            PriceIngestionPipeline pipeline = new PriceIngestionPipeline(readers, parsers, 2 * parsers);
+            PriceIngestionPipeline.Result result = pipeline.run(Path.of(args[1]));
+
+            System.out.println("file,prices,total,cumulative_total");
+
+            for (PriceIngestionPipeline.FileSummary file : result.getFiles()) {
+                if (file.getError() != null) {
+                    System.err.println(file.getError());
+                    continue;
+                }
+
+                System.out.printf("%s,%d,%s,%s%n", file.getPath().getFileName(), file.getCount(),
+                    PriceCents.format(file.getTotalCents()), PriceCents.format(file.getCumulativeCents()));
+            }
+
+            printRepeatedMark('*');
+            System.out.printf("Prices == %d%n", result.getCount());
+            System.out.printf("Average Price == %.2f%n", result.getAverage());
+            System.out.printf("Maximum Price == %.2f%n", result.getMaximum());
+            System.out.printf("Total == %s%n", PriceCents.format(result.getTotalCents()));
+
+            if (result.getSketch().getCount() > 0) {
+                QuantileSketch sketch = result.getSketch();
+                System.out.printf("Median Price == about %.2f%n", sketch.quantile(0.5));
+                System.out.printf("95th Percentile Price == about %.2f%n", sketch.quantile(0.95));
+                System.out.printf("99th Percentile Price == about %.2f%n", sketch.quantile(0.99));
+            }
+
+            for (PriceHistogram.Entry entry : result.getHistogram().topK(5)) {
+                System.out.printf("%.2f   Occurred     %d%n", entry.getPrice(), entry.getCount());
+            }
+
+            printRepeatedMark('*');
+        } catch (IOException e) {
+            System.err.println("The directory could not be read: " + e.getMessage());
+        } catch (ExecutionException e) {
+            System.err.println("The files could not be ingested: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+        }
+    }
+
+    /**
+     * Prints the OHLC bars of a file of ticks with the given command line arguments.
+     *
+     * @param args command line arguments, starting with --bars
+     */
+    private static void doBars(String[] args) {
+        String usage = "Usage: --bars <file> [resolutions, for example 1s,1m,1h]";
+
+        if (args.length < 2 || args.length > 3) {
+            System.err.println(usage);
+            return;
+        }
+
+        try {
+            String[] names = (args.length == 3 ? args[2] : "1s,1m,1h").split(",");
+            long[] resolutions = new long[names.length];
+
+            for (int index = 0; index < names.length; index += 1) {
+                resolutions[index] = OhlcBarAggregator.parseResolution(names[index]);
+            }
+
+            System.out.println("resolution_ms,start_ms,open,high,low,close,volume");
+            OhlcBarAggregator aggregator = new OhlcBarAggregator(System.out::println, resolutions);
+            aggregator.read(Path.of(args[1]));
+
+            if (aggregator.getLateTicks() > 0) {
+                System.err.printf("%d late tick(s) were dropped%n", aggregator.getLateTicks());
+            }
+        } catch (IOException e) {
+            System.err.println("The ticks could not be read: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+        }
+    }
+
+    /**
+     * Runs the streaming mode with the given command line arguments.
+     *
+     * @param args command line arguments, starting with --stream
+     */
+    private static void doStream(String[] args) {
+        String usage = "Usage: --stream <window> <interval> [file]";
+
+        if (args.length < 3 || args.length > 4) {
+            System.err.println(usage);
+            return;
+        }
+
+        try {
+            PriceStreamMonitor monitor = new PriceStreamMonitor(
+                Integer.parseInt(args[1]), Long.parseLong(args[2]), System.out);
+
+            if (args.length == 4) {
+                monitor.tail(Path.of(args[3]));
+            } else {
+                monitor.run(System.in);
+            }
+        } catch (IOException e) {
+            System.err.println("The stream could not be read: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+        }
+    }
+
+    /**
+     * Runs the multi-symbol mode with the given command line arguments,
+     * printing one tab separated line per symbol: symbol, count, average,
+     * maximum and cumulative sum.
+     *
+     * @param args command line arguments, starting with --symbols
+     */
+    private static void doSymbols(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: --symbols <file>");
+            return;
+        }
+
+        MultiSymbolAggregator aggregator = new MultiSymbolAggregator();
+
+        try {
+            aggregator.read(Path.of(args[1]));
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("The ticks could not be read: " + e.getMessage());
+            return;
+        } catch (NumberFormatException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        for (MultiSymbolAggregator.Snapshot snapshot : aggregator.snapshotAll().values()) {
+            System.out.printf("%s\t%d\t%.2f\t%.2f\t%s%n", snapshot.getSymbol(), snapshot.getCount(),
+                snapshot.getAverage(), PriceCents.toCents(snapshot.getMaximum()) / 100.0,
+                PriceCents.format(snapshot.getCumulativeSumCents()));
+        }
     }
 
     /**
@@ -49,41 +276,35 @@ public class StockPriceOperator {
     }
 
     /**
-     * Starts the program by displaying the menu and handling user choices.
+     * Starts the program by displaying the menu and handling user choices
+     * until the user chooses to quit.
      */
     private static void startProgram() {
-        printMenu();
-        int choice = doGetChoice();
-
-        switch (choice) {
-            case 1 -> {
-                doCalculateAverage();
-                startProgram();
-                break;
-            }
-            case 2 -> {
-                doFindMaximum();
-                startProgram();
-                break;
-            }
-            case 3 -> {
-                doCountOccurrence();
-                startProgram();
-                break;
-            }
-            case 4 -> {
-                doCumulativeSum();
-                startProgram();
-                break;
-            }
-            case 0 -> {
-                doExit();
-                break;
-            }
-            default -> {
-                printRepeatedMark();
-                System.out.println("Invalid option.");
-                startProgram();
+        while (true) {
+            printMenu();
+            int choice = doGetChoice();
+
+            switch (choice) {
+                case 1 -> doCalculateAverage();
+                case 2 -> doFindMaximum();
+                case 3 -> doCountOccurrence();
+                case 4 -> doCumulativeSum();
+                case 5 -> doRangeSum();
+                case 6 -> doRangeAverage();
+                case 7 -> doRangeMaximum();
+                case 8 -> doMostFrequentPrices();
+                case 9 -> doEstimatePercentiles();
+                case 10 -> doSaveSnapshot();
+                case 11 -> doCountBetween();
+                case 12 -> doFindNearest();
+                case 0 -> {
+                    doExit();
+                    return;
+                }
+                default -> {
+                    printRepeatedMark();
+                    System.out.println("Invalid option.");
+                }
             }
         }
     }
@@ -97,6 +318,14 @@ public class StockPriceOperator {
         System.out.println("2. Find the maximum stock price");
         System.out.println("3. Determine the occurrence count of a specific price");
         System.out.println("4. Compute the cumulative sum of stock prices");
+        System.out.println("5. Compute the sum of stock prices between two positions");
+        System.out.println("6. Calculate the average stock price between two positions");
+        System.out.println("7. Find the maximum stock price between two positions");
+        System.out.println("8. Find the most frequent stock prices");
+        System.out.println("9. Estimate the median, 95th and 99th percentile stock prices");
+        System.out.println("10. Save stock prices to a binary snapshot file");
+        System.out.println("11. Count the stock prices between two values");
+        System.out.println("12. Find the stock price nearest to a value");
         System.out.println("0. Quit the program");
         printRepeatedMark();
     }
@@ -128,13 +357,13 @@ public class StockPriceOperator {
 
         printChoicePrompt();
 
-        String invalidChoiceMessage = "Invalid choice. The options are: 0, 1, 2, 3 or 4";
+        String invalidChoiceMessage = String.format("Invalid choice. The options are: 0 to %d", LAST_OPTION);
 
         while (!isChoice) {
             try {
                 choice = Integer.parseInt(scanner.nextLine());
 
-                if (choice < 0 || choice > 4) {
+                if (choice < 0 || choice > LAST_OPTION) {
                     printRepeatedMark();
                     System.out.println(invalidChoiceMessage);
                     printRepeatedMark();
@@ -171,6 +400,10 @@ public class StockPriceOperator {
         System.out.println("For example:");
         System.out.println("3.00, 3.45, 5.11, 100.01, 100, 20.34");
         System.out.println("Or");
+        System.out.println("Enter @ followed by the path of a file of prices");
+        System.out.println("For example: @prices.csv, or @ alone to reuse the last file");
+        System.out.println("Snapshot files ending in .prs are opened without parsing");
+        System.out.println("Or");
         System.out.println("Enter 0 to quit");
         printRepeatedMark();
     }
@@ -190,57 +423,168 @@ public class StockPriceOperator {
     }
 
     /**
-     * Checks if all strings in the array can be parsed as floats.
-     *
-     * @param values the array of strings to check
-     * @return true if all strings can be parsed as floats, false otherwise
+     * Prompts the user to enter a position.
      */
-    private static boolean areAllFloats(String[] values) {
-        try {
-            for (String value : values) {
-                Float.parseFloat(value);
-            }
+    private static void printPositionPrompt() {
+        System.out.print("Your position =>: ");
+    }
 
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    /**
+     * Prompts the user to enter a whole number.
+     */
+    private static void printNumberPrompt() {
+        System.out.print("Your number =>: ");
     }
 
     /**
-     * Gets an array of floats entered by the user.
+     * Gets a series of floats entered by the user.
+     * Entering @ alone reuses the series last loaded from a file.
      *
-     * @return an array of floats
+     * @return a series of floats, empty if the user chose to quit
      */
-    private static float[] doGetFloats() {
-        String[] tokens;
-
+    private static PriceSeries doGetSeries() {
         while (true) {
             printFloatsPrompt();
             String input = scanner.nextLine();
 
-            if (input.equals("0")) return new float[0];
+            if (input.equals("0")) return new PriceSeries();
 
-            tokens = input.split(",");
+            if (input.startsWith("@")) {
+                PriceSeries series = doGetFileSeries(input.substring(1).trim());
 
-            if (areAllFloats(tokens)) {
-                System.out.println("All inputs are valid floats");
+                if (!series.isEmpty()) return series;
 
-                var list = new float[tokens.length];
+                continue;
+            }
 
-                for (int index = 0; index < tokens.length; index += 1) {
-                    list[index] = Float.parseFloat(tokens[index]);
-                }
+            PriceSeries cachedSeries = seriesCache.getSeries(input);
 
-                return list;
+            if (cachedSeries != null) {
+                System.out.println("All inputs are valid floats");
+                return cachedSeries;
+            }
+
+            var series = new PriceSeries();
+            var parser = new PriceParser();
+
+            if (parser.feed(input, series::append) && parser.finish(series::append) && !series.isEmpty()) {
+                System.out.println("All inputs are valid floats");
+                seriesCache.putSeries(input, series);
+                return series;
             }
             printRepeatedMark();
-            System.out.println("The input contains non-float values.");
+
+            if (series.isEmpty() && parser.getErrorPosition() < 0) {
+                System.out.println("The input does not contain any float value.");
+            } else {
+                System.out.printf("The input contains a non-float value at position %d:%n", parser.getErrorPosition() + 1);
+                System.out.println(input);
+                System.out.println(" ".repeat((int) parser.getErrorPosition()) + "^");
+            }
+
             System.out.println("Try again or press 0 to quit.");
             printRepeatedMark();
         }
     }
 
+    /**
+     * Gets a series of floats from a file of prices, keeping it for later operations.
+     *
+     * @param fileName the path of the file, or an empty string to reuse the last loaded series
+     * @return a series of floats, or an empty series if the file could not be used
+     */
+    private static PriceSeries doGetFileSeries(String fileName) {
+        if (fileName.isEmpty()) {
+            if (loadedSeries.isEmpty()) {
+                printRepeatedMark();
+                System.out.println("No file has been loaded yet.");
+                System.out.println("Try again or press 0 to quit.");
+                printRepeatedMark();
+            } else {
+                System.out.printf("Reusing %d price(s) from %s%n", loadedSeries.size(), loadedFileName);
+            }
+
+            return loadedSeries;
+        }
+
+        try {
+            PriceSeries series = getCachedFileSeries(Path.of(fileName));
+
+            if (series.isEmpty()) {
+                printRepeatedMark();
+                System.out.println("The file does not contain any price.");
+                System.out.println("Try again or press 0 to quit.");
+                printRepeatedMark();
+            } else {
+                System.out.printf("Loaded %d price(s) from %s%n", series.size(), fileName);
+                loadedSeries = series;
+                loadedFileName = fileName;
+            }
+
+            return series;
+        } catch (IOException | InvalidPathException e) {
+            printRepeatedMark();
+            System.out.println("The file could not be read: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            printRepeatedMark();
+            System.out.println(e.getMessage());
+        }
+
+        System.out.println("Try again or press 0 to quit.");
+        printRepeatedMark();
+        return new PriceSeries();
+    }
+
+    /**
+     * Gets the series of a file through the series cache, reading the file
+     * only if it is not cached or was modified since it was read.
+     *
+     * @param path the file to read
+     * @return the series of the file
+     * @throws IOException           if the file cannot be read
+     * @throws NumberFormatException if a text file contains a non-float value
+     */
+    static PriceSeries getCachedFileSeries(Path path) throws IOException {
+        String key = getFileKey(path);
+        PriceSeries series = seriesCache.getSeries(key);
+
+        if (series == null) {
+            series = readSeries(path);
+
+            if (!series.isEmpty()) seriesCache.putSeries(key, series);
+        }
+
+        return series;
+    }
+
+    /**
+     * Gets the key of a file in the series cache, which changes whenever the file is modified.
+     *
+     * @param path the file
+     * @return the key of the file
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    private static String getFileKey(Path path) throws IOException {
+        return String.format("@%s|%d|%d", path.toAbsolutePath(), Files.size(path),
+            Files.getLastModifiedTime(path).toMillis());
+    }
+
+    /**
+     * Reads a series from a file of prices, or from a snapshot file ending in .prs.
+     *
+     * @param path the file to read
+     * @return the series of the file
+     * @throws IOException           if the file cannot be read
+     * @throws NumberFormatException if a text file contains a non-float value
+     */
+    private static PriceSeries readSeries(Path path) throws IOException {
+        if (path.toString().endsWith(PriceSnapshot.FILE_EXTENSION)) {
+            return PriceSnapshot.open(path);
+        }
+
+        return PriceFileReader.readSeries(path);
+    }
+
     /**
      * Returns to the main menu.
      */
@@ -250,19 +594,13 @@ public class StockPriceOperator {
     }
 
     /**
-     * Calculates the average of an array of floats.
+     * Calculates the average of a series of floats.
      *
-     * @param values the array of floats
+     * @param values the series of floats
      * @return the average as a float
      */
-    private static float calculateAverage(float[] values) {
-        float sum = 0;
-
-        for (float value : values) {
-            sum += value;
-        }
-
-        return sum / values.length;
+    static float calculateAverage(PriceSeries values) {
+        return (float) (ParallelAggregator.sum(values) / values.size());
     }
 
     /**
@@ -273,14 +611,15 @@ public class StockPriceOperator {
         System.out.println("You chose to calculate the average stock price");
         printOperationInstructions();
 
-        float[] floats = doGetFloats();
+        PriceSeries floats = doGetSeries();
 
-        if (floats.length == 0) {
+        if (floats.isEmpty()) {
             goBackToMainMenu();
             return;
         }
         
-        float average = calculateAverage(floats);
+        float average = seriesCache.getAggregate(floats, SeriesCache.Aggregate.AVERAGE,
+            () -> calculateAverage(floats));
 
         BigDecimal bd = new BigDecimal(Float.toString(average));
         bd = bd.setScale(2, RoundingMode.HALF_UP);
@@ -291,18 +630,20 @@ public class StockPriceOperator {
     }
 
     /**
-     * Finds the maximum value in an array of floats.
+     * Finds the maximum value in a series of floats.
      *
-     * @param values the array of floats
+     * @param values the series of floats
      * @return the maximum value as a float
      */
-    private static float getGreaterFloat(float[] values) {
-        float greater = values[0];
+    static float getGreaterFloat(PriceSeries values) {
+        if (ParallelAggregator.isWorthParallel(values)) {
+            return ParallelAggregator.max(values);
+        }
 
-        for (float value : values) {
-            if (value > greater) {
-                greater = value;
-            }
+        float greater = values.get(0);
+
+        for (int chunkIndex = 0; chunkIndex < values.chunkCount(); chunkIndex += 1) {
+            greater = kernels.max(values.chunk(chunkIndex), values.chunkLength(chunkIndex), greater);
         }
 
         return greater;
@@ -316,14 +657,15 @@ public class StockPriceOperator {
         System.out.println("You chose to find maximum price");
         printOperationInstructions();
 
-        float[] floats = doGetFloats();
+        PriceSeries floats = doGetSeries();
 
-        if (floats.length == 0) {
+        if (floats.isEmpty()) {
             goBackToMainMenu();
             return;
         }
         
-        float greater = getGreaterFloat(floats);
+        float greater = seriesCache.getAggregate(floats, SeriesCache.Aggregate.MAXIMUM,
+            () -> getGreaterFloat(floats));
 
         BigDecimal bd = new BigDecimal(Float.toString(greater));
         bd = bd.setScale(2, RoundingMode.HALF_UP);
@@ -359,24 +701,44 @@ public class StockPriceOperator {
     }
 
     /**
-     * Counts the occurrences of a target float in an array of floats.
+     * Counts the occurrences of a target float in a series of floats.
+     * The series is queried through its histogram, built on the first query
+     * and reused while the same series is queried again. Series too long for
+     * a histogram are scanned instead.
      *
      * @param target the float to count
-     * @param list   the array of floats
+     * @param list   the series of floats
      * @return the number of occurrences
      */
-    private static int countOccurrence(float target, float[] list) {
-        int counter = 0;
+    static long countOccurrence(float target, PriceSeries list) {
+        if (list.size() <= PriceHistogram.MAX_DISTINCT_COUNT) {
+            return getPriceHistogram(list).count(target);
+        }
 
-        for (float value : list) {
-            if (value == target) {
-                counter += 1;
-            }
+        long counter = 0;
+
+        for (int chunkIndex = 0; chunkIndex < list.chunkCount(); chunkIndex += 1) {
+            counter += kernels.count(list.chunk(chunkIndex), list.chunkLength(chunkIndex), target);
         }
 
         return counter;
     }
 
+    /**
+     * Gets the histogram of a series, building it only if the series changed.
+     *
+     * @param values the series of floats
+     * @return the histogram of the series
+     */
+    static PriceHistogram getPriceHistogram(PriceSeries values) {
+        if (histogramSeries != values) {
+            priceHistogram = PriceHistogram.of(values);
+            histogramSeries = values;
+        }
+
+        return priceHistogram;
+    }
+
     /**
      * Counts and displays the occurrences of a specific stock price entered by the user.
      */
@@ -385,9 +747,9 @@ public class StockPriceOperator {
         System.out.println("You chose to determine the occurrence count of a specific price.");
         printOperationInstructions();
 
-        float[] floats = doGetFloats();
+        PriceSeries floats = doGetSeries();
 
-        if (floats.length == 0) {
+        if (floats.isEmpty()) {
             goBackToMainMenu();
             return;
         }
@@ -404,7 +766,7 @@ public class StockPriceOperator {
             return;
         }
         
-        int occurrences = countOccurrence(target, floats);
+        long occurrences = countOccurrence(target, floats);
 
         printRepeatedMark('*');
         System.out.printf("%.2f   Occurred     %d%n", target, occurrences);
@@ -412,24 +774,23 @@ public class StockPriceOperator {
     }
 
     /**
-     * Computes the cumulative sum of an array of floats.
+     * Computes the cumulative sum of a series of floats, rounded to 2 decimal places.
      *
-     * @param values the array of floats
-     * @return an array of cumulative sums
+     * @param values the series of floats
+     * @return a series of cumulative sums in cents
      */
-    private static float[] getCumulativeSum(float[] values) {
-        float sum = 0;
-        float[] cumulativeList = new float[values.length];
-
-        for (int index = 0; index < values.length; index += 1) {
-            BigDecimal bd = new BigDecimal(Float.toString(sum + values[index]));
-            bd = bd.setScale(2, RoundingMode.HALF_UP);
-
-            cumulativeList[index] = bd.floatValue();
-            sum = bd.floatValue();
-        }
+    static CentsSeries getCumulativeSum(PriceSeries values) {
+        return PriceCents.cumulativeSum(values);
+    }
 
-        return cumulativeList;
+    /**
+     * Gets the cumulative sum of a series from the series cache, computing it only if needed.
+     *
+     * @param values the series of floats
+     * @return a series of cumulative sums in cents
+     */
+    private static CentsSeries getCachedCumulativeSum(PriceSeries values) {
+        return seriesCache.getAggregate(values, SeriesCache.Aggregate.CUMULATIVE_SUM, () -> getCumulativeSum(values));
     }
 
     /**
@@ -440,22 +801,24 @@ public class StockPriceOperator {
         System.out.println("You chose to compute the cumulative sum of stock prices.");
         printOperationInstructions();
 
-        float[] floats = doGetFloats();
+        PriceSeries floats = doGetSeries();
 
-        if (floats.length == 0) {
+        if (floats.isEmpty()) {
             goBackToMainMenu();
             return;
         }
         
-        float[] cumulativeList = getCumulativeSum(floats);
+        CentsSeries cumulativeList = getCachedCumulativeSum(floats);
+        indexedSeries = floats;
+        prefixSumIndex = new PrefixSumIndex(cumulativeList);
 
         printRepeatedMark('*');
         System.out.println("Below is the cumulative sum of the stock prices");
         StringBuilder string = new StringBuilder();
         string.append("[");
 
-        for (float value : cumulativeList) {
-            string.append(value);
+        for (long index = 0; index < cumulativeList.size(); index += 1) {
+            string.append(PriceCents.format(cumulativeList.get(index)));
             string.append(", ");
         }
 
@@ -463,4 +826,466 @@ public class StockPriceOperator {
         System.out.println(string);
         printRepeatedMark('*');
     }
+
+    /**
+     * Gets the prefix-sum index of a series, building it only if the series changed.
+     *
+     * @param values the series of floats
+     * @return the prefix-sum index of the series
+     */
+    static PrefixSumIndex getPrefixSumIndex(PriceSeries values) {
+        if (indexedSeries != values) {
+            prefixSumIndex = new PrefixSumIndex(getCachedCumulativeSum(values));
+            indexedSeries = values;
+        }
+
+        return prefixSumIndex;
+    }
+
+    /**
+     * Gets a position of a series entered by the user.
+     *
+     * @param size the size of the series
+     * @return the zero-based position, or -1 if the user chose to quit
+     */
+    private static long getPosition(long size) {
+        return getWholeNumber(size, true) - 1;
+    }
+
+    /**
+     * Gets a whole number from 1 to a maximum entered by the user.
+     *
+     * @param maximum    the greatest valid number
+     * @param isPosition true to prompt for a position, false to prompt for a number
+     * @return the entered number, or 0 if the user chose to quit
+     */
+    private static long getWholeNumber(long maximum, boolean isPosition) {
+        while (true) {
+            if (isPosition) {
+                printPositionPrompt();
+            } else {
+                printNumberPrompt();
+            }
+
+            String input = scanner.nextLine();
+
+            try {
+                long number = Long.parseLong(input.trim());
+
+                if (number >= 0 && number <= maximum) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // The message below covers every invalid input.
+            }
+
+            printRepeatedMark();
+            System.out.printf("The %s must be a whole number from 1 to %d.%n", isPosition ? "position" : "number", maximum);
+            System.out.println("Try again or press 0 to quit.");
+            printRepeatedMark();
+        }
+    }
+
+    /**
+     * Gets the first and last positions of a range entered by the user.
+     *
+     * @param size the size of the series
+     * @return the zero-based first and last positions, or null if the user chose to quit
+     */
+    private static long[] doGetRange(long size) {
+        printRepeatedMark('-');
+        System.out.printf("Please enter the first position of the range, from 1 to %d%n", size);
+        System.out.println("Or Enter 0 to discard method");
+        printRepeatedMark('-');
+
+        long from = getPosition(size);
+
+        if (from < 0) return null;
+
+        printRepeatedMark('-');
+        System.out.printf("Please enter the last position of the range, from %d to %d%n", from + 1, size);
+        System.out.println("Or Enter 0 to discard method");
+        printRepeatedMark('-');
+
+        while (true) {
+            long to = getPosition(size);
+
+            if (to < 0) return null;
+
+            if (to >= from) return new long[] {from, to};
+
+            printRepeatedMark();
+            System.out.println("The last position must not be before the first position.");
+            System.out.println("Try again or press 0 to quit.");
+            printRepeatedMark();
+        }
+    }
+
+    /**
+     * Computes and displays the sum of stock prices between two positions entered by the user.
+     */
+    private static void doRangeSum() {
+        printRepeatedMark();
+        System.out.println("You chose to compute the sum of stock prices between two positions.");
+        printOperationInstructions();
+
+        PriceSeries floats = doGetSeries();
+
+        if (floats.isEmpty()) {
+            goBackToMainMenu();
+            return;
+        }
+
+        long[] range = doGetRange(floats.size());
+
+        if (range == null) {
+            goBackToMainMenu();
+            return;
+        }
+
+        long sum = getPrefixSumIndex(floats).rangeSumCents(range[0], range[1]);
+
+        printRepeatedMark('*');
+        System.out.printf("The Sum of the prices from position %d to %d is == %.2f%n",
+            range[0] + 1, range[1] + 1, sum / 100.0);
+        printRepeatedMark('*');
+    }
+
+    /**
+     * Calculates and displays the average stock price between two positions entered by the user.
+     */
+    private static void doRangeAverage() {
+        printRepeatedMark();
+        System.out.println("You chose to calculate the average stock price between two positions.");
+        printOperationInstructions();
+
+        PriceSeries floats = doGetSeries();
+
+        if (floats.isEmpty()) {
+            goBackToMainMenu();
+            return;
+        }
+
+        long[] range = doGetRange(floats.size());
+
+        if (range == null) {
+            goBackToMainMenu();
+            return;
+        }
+
+        double average = getPrefixSumIndex(floats).rangeAverage(range[0], range[1]);
+
+        printRepeatedMark('*');
+        System.out.printf("The Average Price from position %d to %d to 2 decimal places is == %.2f%n",
+            range[0] + 1, range[1] + 1, average);
+        printRepeatedMark('*');
+    }
+
+    /**
+     * Finds the maximum price between two positions, building a range index
+     * only if the series changed. Series whose sparse table would be too large
+     * are indexed with a segment tree instead.
+     *
+     * @param values the series of floats
+     * @param from   the zero-based position of the first price, inclusive
+     * @param to     the zero-based position of the last price, inclusive
+     * @return the maximum price of the range
+     */
+    static float getRangeMaximum(PriceSeries values, int from, int to) {
+        if (maxIndexedSeries != values) {
+            boolean isSmall = SparseTableMax.fits(values.size());
+            sparseTableMax = isSmall ? new SparseTableMax(values) : null;
+            segmentTreeMax = isSmall ? null : new SegmentTreeMax(values);
+            maxIndexedSeries = values;
+        }
+
+        return sparseTableMax != null ? sparseTableMax.max(from, to) : segmentTreeMax.max(from, to);
+    }
+
+    /**
+     * Finds and displays the maximum stock price between two positions entered by the user.
+     */
+    private static void doRangeMaximum() {
+        printRepeatedMark();
+        System.out.println("You chose to find the maximum price between two positions.");
+        printOperationInstructions();
+
+        PriceSeries floats = doGetSeries();
+
+        if (floats.isEmpty()) {
+            goBackToMainMenu();
+            return;
+        }
+
+        if (floats.size() > SegmentTreeMax.MAX_SIZE) {
+            printRepeatedMark();
+            System.out.println("The series is too long for range maximum queries.");
+            goBackToMainMenu();
+            return;
+        }
+
+        long[] range = doGetRange(floats.size());
+
+        if (range == null) {
+            goBackToMainMenu();
+            return;
+        }
+
+        float greater = getRangeMaximum(floats, (int) range[0], (int) range[1]);
+
+        printRepeatedMark('*');
+        System.out.printf("The Maximum Price from position %d to %d to 2 decimal places is == %.2f%n",
+            range[0] + 1, range[1] + 1, PriceCents.toCents(greater) / 100.0);
+        printRepeatedMark('*');
+    }
+
+    /**
+     * Finds and displays the most frequent stock prices entered by the user.
+     */
+    private static void doMostFrequentPrices() {
+        printRepeatedMark();
+        System.out.println("You chose to find the most frequent stock prices.");
+        printOperationInstructions();
+
+        PriceSeries floats = doGetSeries();
+
+        if (floats.isEmpty()) {
+            goBackToMainMenu();
+            return;
+        }
+
+        PriceHistogram histogram;
+
+        try {
+            histogram = getPriceHistogram(floats);
+        } catch (IllegalStateException e) {
+            printRepeatedMark();
+            System.out.println(e.getMessage());
+            goBackToMainMenu();
+            return;
+        }
+
+        printRepeatedMark('-');
+        System.out.printf("Please enter how many prices you want to see, from 1 to %d%n", histogram.distinctCount());
+        System.out.println("Or Enter 0 to discard method");
+        printRepeatedMark('-');
+
+        long k = getWholeNumber(histogram.distinctCount(), false);
+
+        if (k == 0) {
+            goBackToMainMenu();
+            return;
+        }
+
+        printRepeatedMark('*');
+        System.out.println("Below are the most frequent stock prices");
+
+        for (PriceHistogram.Entry entry : histogram.topK((int) k)) {
+            System.out.printf("%.2f   Occurred     %d%n", entry.getPrice(), entry.getCount());
+        }
+
+        printRepeatedMark('*');
+    }
+
+    /**
+     * Estimates and displays the median, 95th and 99th percentiles of stock prices entered by the user.
+     */
+    private static void doEstimatePercentiles() {
+        printRepeatedMark();
+        System.out.println("You chose to estimate the median, 95th and 99th percentile stock prices.");
+        printOperationInstructions();
+
+        PriceSeries floats = doGetSeries();
+
+        if (floats.isEmpty()) {
+            goBackToMainMenu();
+            return;
+        }
+
+        QuantileSketch sketch = QuantileSketch.of(floats);
+
+        printRepeatedMark('*');
+        System.out.printf("The Median Price of the entered value(s) is about == %.2f%n", sketch.quantile(0.5));
+        System.out.printf("The 95th Percentile Price of the entered value(s) is about == %.2f%n", sketch.quantile(0.95));
+        System.out.printf("The 99th Percentile Price of the entered value(s) is about == %.2f%n", sketch.quantile(0.99));
+        printRepeatedMark('*');
+    }
+
+    /**
+     * Gets the sorted index of a series, building it only if the series changed.
+     *
+     * @param values the series of floats
+     * @return the sorted index of the series
+     */
+    static SortedPriceIndex getSortedPriceIndex(PriceSeries values) {
+        if (sortedSeries != values) {
+            sortedPriceIndex = new SortedPriceIndex(values);
+            sortedSeries = values;
+        }
+
+        return sortedPriceIndex;
+    }
+
+    /**
+     * Gets a series of floats entered by the user for a sorted index query.
+     *
+     * @return a series of floats, empty if the user chose to quit or the series is too long
+     */
+    private static PriceSeries doGetSortableSeries() {
+        PriceSeries floats = doGetSeries();
+
+        if (floats.size() > Integer.MAX_VALUE - 8) {
+            printRepeatedMark();
+            System.out.println("The series is too long to be sorted.");
+            return new PriceSeries();
+        }
+
+        return floats;
+    }
+
+    /**
+     * Counts and displays the stock prices between two values entered by the user.
+     */
+    private static void doCountBetween() {
+        printRepeatedMark();
+        System.out.println("You chose to count the stock prices between two values.");
+        printOperationInstructions();
+
+        PriceSeries floats = doGetSortableSeries();
+
+        if (floats.isEmpty()) {
+            goBackToMainMenu();
+            return;
+        }
+
+        printRepeatedMark('-');
+        System.out.println("Please enter the lowest stock price of the range");
+        System.out.println("For example: 20.34 Or Enter 0 to discard method");
+        printRepeatedMark('-');
+
+        float low = getFloat();
+
+        if (low == 0) {
+            goBackToMainMenu();
+            return;
+        }
+
+        printRepeatedMark('-');
+        System.out.println("Please enter the highest stock price of the range");
+        System.out.println("For example: 25.10 Or Enter 0 to discard method");
+        printRepeatedMark('-');
+
+        float high = getFloat();
+
+        if (high == 0) {
+            goBackToMainMenu();
+            return;
+        }
+
+        int count = getSortedPriceIndex(floats).countBetween(low, high);
+
+        printRepeatedMark('*');
+        System.out.printf("The number of prices from %s to %s is == %d%n", low, high, count);
+        printRepeatedMark('*');
+    }
+
+    /**
+     * Finds and displays the stock price nearest to a value entered by the user.
+     */
+    private static void doFindNearest() {
+        printRepeatedMark();
+        System.out.println("You chose to find the stock price nearest to a value.");
+        printOperationInstructions();
+
+        PriceSeries floats = doGetSortableSeries();
+
+        if (floats.isEmpty()) {
+            goBackToMainMenu();
+            return;
+        }
+
+        printRepeatedMark('-');
+        System.out.println("Please enter the stock price you want to look for");
+        System.out.println("For example: 20.34 Or Enter 0 to discard method");
+        printRepeatedMark('-');
+
+        float target = getFloat();
+
+        if (target == 0) {
+            goBackToMainMenu();
+            return;
+        }
+
+        float nearest = getSortedPriceIndex(floats).nearest(target);
+
+        printRepeatedMark('*');
+
+        if (Float.isNaN(nearest)) {
+            System.out.println("The entered value(s) do not contain any comparable price.");
+        } else {
+            System.out.printf("The Nearest Price to %s to 2 decimal places is == %.2f%n", target,
+                PriceCents.toCents(nearest) / 100.0);
+        }
+
+        printRepeatedMark('*');
+    }
+
+    /**
+     * Saves stock prices entered by the user to a binary snapshot file.
+     */
+    private static void doSaveSnapshot() {
+        printRepeatedMark();
+        System.out.println("You chose to save stock prices to a binary snapshot file.");
+        printOperationInstructions();
+
+        PriceSeries floats = doGetSeries();
+
+        if (floats.isEmpty()) {
+            goBackToMainMenu();
+            return;
+        }
+
+        printRepeatedMark('-');
+        System.out.printf("Please enter the path of the snapshot file, ending in %s%n", PriceSnapshot.FILE_EXTENSION);
+        System.out.println("Add a space and the word cents to store prices rounded to cents in a smaller file");
+        System.out.println("For example: prices.prs cents Or Enter 0 to discard method");
+        printRepeatedMark('-');
+
+        while (true) {
+            System.out.print("Your file =>: ");
+            String input = scanner.nextLine().trim();
+
+            if (input.equals("0")) {
+                goBackToMainMenu();
+                return;
+            }
+
+            PriceSnapshot.Encoding encoding = PriceSnapshot.Encoding.FLOAT;
+
+            if (input.endsWith(" cents")) {
+                encoding = PriceSnapshot.Encoding.DELTA_CENTS;
+                input = input.substring(0, input.length() - " cents".length()).trim();
+            }
+
+            if (input.endsWith(PriceSnapshot.FILE_EXTENSION)) {
+                try {
+                    PriceSnapshot.write(floats, Path.of(input), encoding);
+
+                    printRepeatedMark('*');
+                    System.out.printf("Saved %d price(s) to %s%n", floats.size(), input);
+                    printRepeatedMark('*');
+                    return;
+                } catch (IOException | InvalidPathException e) {
+                    printRepeatedMark();
+                    System.out.println("The file could not be written: " + e.getMessage());
+                }
+            } else {
+                printRepeatedMark();
+                System.out.printf("The file name must end in %s.%n", PriceSnapshot.FILE_EXTENSION);
+            }
+
+            System.out.println("Try again or press 0 to quit.");
+            printRepeatedMark();
+        }
+    }
 }
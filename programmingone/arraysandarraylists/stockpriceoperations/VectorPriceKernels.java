@@ -0,0 +1,130 @@
+package programmingone.arraysandarraylists.stockpriceoperations;
+
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorPriceKernels class processes as many prices per instruction as
+ * the widest vector register of the host holds, using the incubating Vector API.
+ * It must be compiled and run with {@code --add-modules jdk.incubator.vector}.
+ * <p>
+ * The maximum ignores NaN prices exactly like the scalar kernel, while the
+ * sum adds the prices lane by lane and may differ from it in the last bits.
+ * The compensated sum runs Kahan summation in every lane, then combines
+ * the lanes in double precision.
+ */
+final class VectorPriceKernels implements PriceKernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float sum(ByteBuffer chunk, int length) {
+        int bound = SPECIES.loopBound(length);
+        FloatVector sums = FloatVector.zero(SPECIES);
+
+        for (int index = 0; index < bound; index += SPECIES.length()) {
+            sums = sums.add(load(chunk, index));
+        }
+
+        float sum = sums.reduceLanes(VectorOperators.ADD);
+
+        for (int index = bound; index < length; index += 1) {
+            sum += chunk.getFloat(index << 2);
+        }
+
+        return sum;
+    }
+
+    @Override
+    public double compensatedSum(ByteBuffer chunk, int length) {
+        int bound = SPECIES.loopBound(length);
+        FloatVector sums = FloatVector.zero(SPECIES);
+        FloatVector compensations = FloatVector.zero(SPECIES);
+
+        for (int index = 0; index < bound; index += SPECIES.length()) {
+            FloatVector corrected = load(chunk, index).sub(compensations);
+            FloatVector totals = sums.add(corrected);
+            compensations = totals.sub(sums).sub(corrected);
+            sums = totals;
+        }
+
+        CompensatedSum sum = new CompensatedSum();
+
+        for (int lane = 0; lane < SPECIES.length(); lane += 1) {
+            sum.add(sums.lane(lane));
+            sum.add(-compensations.lane(lane));
+        }
+
+        for (int index = bound; index < length; index += 1) {
+            sum.add(chunk.getFloat(index << 2));
+        }
+
+        return sum.getValue();
+    }
+
+    @Override
+    public float max(ByteBuffer chunk, int length, float initial) {
+        if (Float.isNaN(initial)) return initial;
+
+        int bound = SPECIES.loopBound(length);
+        FloatVector greaters = FloatVector.broadcast(SPECIES, initial);
+
+        for (int index = 0; index < bound; index += SPECIES.length()) {
+            FloatVector values = load(chunk, index);
+            VectorMask<Float> isGreater = values.compare(VectorOperators.GT, greaters);
+            greaters = greaters.blend(values, isGreater);
+        }
+
+        float greater = initial;
+
+        for (int lane = 0; lane < SPECIES.length(); lane += 1) {
+            float value = greaters.lane(lane);
+
+            if (value > greater) {
+                greater = value;
+            }
+        }
+
+        for (int index = bound; index < length; index += 1) {
+            float value = chunk.getFloat(index << 2);
+
+            if (value > greater) {
+                greater = value;
+            }
+        }
+
+        return greater;
+    }
+
+    @Override
+    public long count(ByteBuffer chunk, int length, float target) {
+        int bound = SPECIES.loopBound(length);
+        long counter = 0;
+
+        for (int index = 0; index < bound; index += SPECIES.length()) {
+            counter += load(chunk, index).compare(VectorOperators.EQ, target).trueCount();
+        }
+
+        for (int index = bound; index < length; index += 1) {
+            if (chunk.getFloat(index << 2) == target) {
+                counter += 1;
+            }
+        }
+
+        return counter;
+    }
+
+    /**
+     * Loads the prices starting at a position of a chunk into a vector.
+     *
+     * @param chunk the chunk of prices
+     * @param index the position of the first price
+     * @return the vector of prices
+     */
+    private static FloatVector load(ByteBuffer chunk, int index) {
+        return FloatVector.fromByteBuffer(SPECIES, chunk, index << 2, chunk.order());
+    }
+}
@@ -1,18 +1,23 @@
 package programmingone.controlstructures.librarysystem;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Book {
   private String id;
   private String title;
   private String author;
-  private int quantity;
+  private final AtomicInteger quantity;
 
   public Book(String title, String author, int quantity) {
-    id = UUID.randomUUID().toString();
+    this(UUID.randomUUID().toString(), title, author, quantity);
+  }
+
+  public Book(String id, String title, String author, int quantity) {
+    this.id = id;
     this.title = title;
     this.author = author;
-    this.quantity = quantity;
+    this.quantity = new AtomicInteger(quantity);
   }
 
   public String getId() {
@@ -28,27 +33,34 @@ public class Book {
   }
 
   public int getQuantity() {
-    return quantity;
+    return quantity.get();
   }
   
   public void addQuantity(int quantity) {
-    this.quantity += quantity;
+    this.quantity.updateAndGet(current -> Math.addExact(current, quantity));
   }
 
   public boolean borrowBook(int quantity) {
-    if (this.quantity >= quantity) {
-      this.quantity -=quantity;
-      return true;
+    int available = this.quantity.get();
+
+    while (available >= quantity) {
+      int witness = this.quantity.compareAndExchange(available, available - quantity);
+
+      if (witness == available) {
+        return true;
+      }
+
+      available = witness;
     }
 
     return false;
   }
 
   public void returnBook(int quantity) {
-    this.quantity += quantity;
+    this.quantity.updateAndGet(current -> Math.addExact(current, quantity));
   }
   
   public String toString() {
-    return String.format("%s, %s, %s, %d", id, title, author, quantity);
+    return String.format("%s, %s, %s, %d", id, title, author, quantity.get());
   }
 }
@@ -0,0 +1,64 @@
+package programmingone.controlstructures.librarysystem;
+
+public final class BookKey {
+  private static final ThreadLocal<BookKey> lookupKey = ThreadLocal.withInitial(BookKey::new);
+
+  private String title;
+  private String author;
+  private int hash;
+
+  private BookKey() {
+  }
+
+  public BookKey(String title, String author) {
+    set(title, author);
+  }
+
+  // Reuses one mutable key per thread: it is only valid for a single get, and storing it
+  // in a map, or calling lookup again before the get, corrupts the map it is stored in.
+  static BookKey lookup(String title, String author) {
+    return lookupKey.get().set(title, author);
+  }
+
+  private BookKey set(String title, String author) {
+    this.title = title;
+    this.author = author;
+    hash = hash(title, author);
+    return this;
+  }
+
+  static int hash(String title, String author) {
+    return 31 * title.hashCode() + author.hashCode();
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+
+    if (!(other instanceof BookKey key)) {
+      return false;
+    }
+
+    return hash == key.hash && title.equals(key.title) && author.equals(key.author);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return title + " - " + author;
+  }
+}
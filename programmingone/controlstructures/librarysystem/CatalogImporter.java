@@ -0,0 +1,311 @@
+package programmingone.controlstructures.librarysystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CatalogImporter {
+  private static final long MAX_CHUNK_SIZE = 1L << 30;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private final int threads;
+
+  public CatalogImporter(int threads) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("The number of threads must be positive.");
+    }
+
+    this.threads = threads;
+  }
+
+  public Result importFile(Path path, LibraryJournal journal) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    List<Chunk> chunks = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      List<Future<Chunk>> futures = new ArrayList<>();
+
+      for (long[] range : split(channel)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]);
+        futures.add(executor.submit(() -> parse(buffer, range[0] == 0)));
+      }
+
+      for (Future<Chunk> future : futures) {
+        chunks.add(future.get());
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("The catalog could not be parsed: " + e.getCause().getMessage(), e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Map<BookKey, Total> totals = chunks.get(0).totals;
+    long rows = 0;
+    long invalidRows = 0;
+    String firstInvalidRow = null;
+
+    for (Chunk chunk : chunks) {
+      if (chunk.totals != totals) {
+        for (Map.Entry<BookKey, Total> entry : chunk.totals.entrySet()) {
+          totals.merge(entry.getKey(), entry.getValue(), Total::add);
+        }
+      }
+
+      rows += chunk.rows;
+      invalidRows += chunk.invalidRows;
+
+      if (firstInvalidRow == null) {
+        firstInvalidRow = chunk.firstInvalidRow;
+      }
+    }
+
+    Map<BookKey, Integer> quantities = new HashMap<>();
+    List<BookKey> rejected = new ArrayList<>();
+
+    for (Map.Entry<BookKey, Total> entry : totals.entrySet()) {
+      if (entry.getValue().quantity <= Integer.MAX_VALUE) {
+        quantities.put(entry.getKey(), (int) entry.getValue().quantity);
+      } else {
+        rejected.add(entry.getKey());
+      }
+    }
+
+    rejected.addAll(journal.addAll(quantities));
+
+    for (BookKey key : rejected) {
+      long titleRows = totals.get(key).rows;
+      rows -= titleRows;
+      invalidRows += titleRows;
+
+      if (firstInvalidRow == null) {
+        firstInvalidRow = String.format("%s,%s (the total quantity is too large)", key.getTitle(), key.getAuthor());
+      }
+    }
+
+    long elapsed = System.nanoTime() - start;
+    return new Result(rows, totals.size() - rejected.size(), invalidRows, firstInvalidRow, elapsed);
+  }
+
+  private List<long[]> split(FileChannel channel) throws IOException {
+    long size = channel.size();
+    long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(1 << 20, size / ((long) threads * CHUNKS_PER_THREAD) + 1));
+    List<long[]> ranges = new ArrayList<>();
+    ByteBuffer probe = ByteBuffer.allocate(1 << 12);
+    long from = 0;
+
+    while (from < size) {
+      long to = Math.min(size, from + chunkSize);
+
+      while (to < size) {
+        probe.clear();
+        int read = channel.read(probe, to);
+        int newline = -1;
+
+        if (read <= 0) {
+          throw new IOException("The file shrank while it was being imported");
+        }
+
+        for (int index = 0; index < read && newline < 0; index += 1) {
+          if (probe.get(index) == '\n') {
+            newline = index;
+          }
+        }
+
+        if (newline >= 0) {
+          to += newline + 1;
+          break;
+        }
+
+        to += read;
+      }
+
+      ranges.add(new long[] {from, Math.min(to, size)});
+      from = to;
+    }
+
+    if (ranges.isEmpty()) {
+      ranges.add(new long[] {0, 0});
+    }
+
+    return ranges;
+  }
+
+  private static Chunk parse(ByteBuffer buffer, boolean isFirst) {
+    Chunk chunk = new Chunk();
+    byte[] line = new byte[256];
+    int limit = buffer.limit();
+    int lineStart = 0;
+
+    for (int index = 0; index <= limit; index += 1) {
+      if (index < limit && buffer.get(index) != '\n') {
+        continue;
+      }
+
+      int length = index - lineStart;
+
+      if (length > 0 && buffer.get(index - 1) == '\r') {
+        length -= 1;
+      }
+
+      if (length > line.length) {
+        line = new byte[Math.max(length, line.length * 2)];
+      }
+
+      buffer.get(lineStart, line, 0, length);
+      boolean isHeader = isFirst && chunk.rows == 0 && chunk.invalidRows == 0;
+      lineStart = index + 1;
+
+      if (length > 0) {
+        parseRow(new String(line, 0, length, StandardCharsets.UTF_8), isHeader, chunk);
+      }
+    }
+
+    return chunk;
+  }
+
+  private static void parseRow(String row, boolean isHeader, Chunk chunk) {
+    List<String> fields = splitFields(row);
+
+    if (fields != null && fields.size() == 3) {
+      String title = fields.get(0).trim();
+      String author = fields.get(1).trim();
+      String quantityText = fields.get(2).trim();
+
+      if (isHeader && title.equalsIgnoreCase("title") && author.equalsIgnoreCase("author")
+          && quantityText.equalsIgnoreCase("quantity")) {
+        return;
+      }
+
+      int quantity = parseQuantity(quantityText);
+
+      if (quantity > 0 && !title.isEmpty() && !author.isEmpty()) {
+        Total total = chunk.totals.computeIfAbsent(new BookKey(title, author), key -> new Total());
+        total.quantity += quantity;
+        total.rows += 1;
+        chunk.rows += 1;
+        return;
+      }
+    }
+
+    chunk.invalidRows += 1;
+
+    if (chunk.firstInvalidRow == null) {
+      chunk.firstInvalidRow = row;
+    }
+  }
+
+  private static int parseQuantity(String text) {
+    try {
+      return Integer.parseInt(text);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static List<String> splitFields(String row) {
+    List<String> fields = new ArrayList<>(3);
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+
+    for (int index = 0; index < row.length(); index += 1) {
+      char character = row.charAt(index);
+
+      if (quoted) {
+        if (character != '"') {
+          field.append(character);
+        } else if (index + 1 < row.length() && row.charAt(index + 1) == '"') {
+          field.append('"');
+          index += 1;
+        } else {
+          quoted = false;
+        }
+      } else if (character == '"' && field.toString().isBlank()) {
+        field.setLength(0);
+        quoted = true;
+      } else if (character == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(character);
+      }
+    }
+
+    if (quoted) {
+      return null;
+    }
+
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static class Total {
+    private long quantity = 0;
+    private long rows = 0;
+
+    private Total add(Total other) {
+      quantity += other.quantity;
+      rows += other.rows;
+      return this;
+    }
+  }
+
+  private static class Chunk {
+    private final Map<BookKey, Total> totals = new HashMap<>();
+    private long rows = 0;
+    private long invalidRows = 0;
+    private String firstInvalidRow = null;
+  }
+
+  public static class Result {
+    private final long rows;
+    private final int titles;
+    private final long invalidRows;
+    private final String firstInvalidRow;
+    private final long elapsedNanos;
+
+    Result(long rows, int titles, long invalidRows, String firstInvalidRow, long elapsedNanos) {
+      this.rows = rows;
+      this.titles = titles;
+      this.invalidRows = invalidRows;
+      this.firstInvalidRow = firstInvalidRow;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRows() {
+      return rows;
+    }
+
+    public int getTitles() {
+      return titles;
+    }
+
+    public long getInvalidRows() {
+      return invalidRows;
+    }
+
+    public String getFirstInvalidRow() {
+      return firstInvalidRow;
+    }
+
+    public double getSeconds() {
+      return elapsedNanos / 1e9;
+    }
+
+    public double getRowsPerSecond() {
+      return rows / Math.max(getSeconds(), 1e-9);
+    }
+  }
+}
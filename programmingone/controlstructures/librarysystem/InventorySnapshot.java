@@ -0,0 +1,368 @@
+package programmingone.controlstructures.librarysystem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class InventorySnapshot {
+  private static final int MAGIC = 0x4C424933;
+  private static final int HEADER_SIZE = 64;
+  private static final int COLUMN_COUNT = 6;
+
+  private final long generation;
+  private final int count;
+  private final int tableMask;
+  private final ByteBuffer hashes;
+  private final ByteBuffer titles;
+  private final ByteBuffer authors;
+  private final ByteBuffer quantities;
+  private final ByteBuffer idsMost;
+  private final ByteBuffer idsLeast;
+  private final ByteBuffer stringHashes;
+  private final ByteBuffer stringTable;
+  private final ByteBuffer stringOffsets;
+  private final ByteBuffer stringData;
+  private final ByteBuffer table;
+  private final int stringCount;
+  private final int stringTableMask;
+
+  private InventorySnapshot(FileChannel channel) throws IOException {
+    ByteBuffer header = map(channel, 0, HEADER_SIZE);
+
+    if (header.getInt() != MAGIC) {
+      throw new IOException("Not a library snapshot");
+    }
+
+    generation = header.getLong();
+    count = header.getInt();
+    stringCount = header.getInt();
+    int tableSize = header.getInt();
+    long stringDataSize = header.getLong();
+    int stringTableSize = header.getInt();
+    tableMask = tableSize - 1;
+    stringTableMask = stringTableSize - 1;
+
+    long position = HEADER_SIZE;
+    hashes = map(channel, position, 4L * count);
+    titles = map(channel, position += 4L * count, 4L * count);
+    authors = map(channel, position += 4L * count, 4L * count);
+    quantities = map(channel, position += 4L * count, 4L * count);
+    idsMost = map(channel, position += 4L * count, 8L * count);
+    idsLeast = map(channel, position += 8L * count, 8L * count);
+    table = map(channel, position += 8L * count, 4L * tableSize);
+    stringHashes = map(channel, position += 4L * tableSize, 4L * stringCount);
+    stringTable = map(channel, position += 4L * stringCount, 4L * stringTableSize);
+    stringOffsets = map(channel, position += 4L * stringTableSize, 8L * (stringCount + 1));
+    stringData = map(channel, position + 8L * (stringCount + 1), stringDataSize);
+  }
+
+  public static InventorySnapshot open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new InventorySnapshot(channel);
+    }
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public Book find(String title, String author) {
+    int record = findRecord(title, author);
+
+    if (record < 0) {
+      return null;
+    }
+
+    return new Book(getId(record), title, author, quantities.getInt(record << 2));
+  }
+
+  private int findRecord(String title, String author) {
+    if (count == 0) {
+      return -1;
+    }
+
+    int hash = BookKey.hash(title, author);
+    byte[] titleBytes = null;
+    byte[] authorBytes = null;
+
+    for (int slot = mix(hash) & tableMask; ; slot = (slot + 1) & tableMask) {
+      int reference = table.getInt(slot << 2);
+
+      if (reference == 0) {
+        return -1;
+      }
+
+      int record = reference - 1;
+
+      if (hashes.getInt(record << 2) != hash) {
+        continue;
+      }
+
+      if (titleBytes == null) {
+        titleBytes = title.getBytes(StandardCharsets.UTF_8);
+        authorBytes = author.getBytes(StandardCharsets.UTF_8);
+      }
+
+      if (stringEquals(titles.getInt(record << 2), titleBytes)
+          && stringEquals(authors.getInt(record << 2), authorBytes)) {
+        return record;
+      }
+    }
+  }
+
+  private int findString(String value, byte[] bytes) {
+    if (stringCount == 0) {
+      return -1;
+    }
+
+    int hash = value.hashCode();
+
+    for (int slot = mix(hash) & stringTableMask; ; slot = (slot + 1) & stringTableMask) {
+      int reference = stringTable.getInt(slot << 2) - 1;
+
+      if (reference < 0) {
+        return -1;
+      }
+
+      if (stringHashes.getInt(reference << 2) == hash && stringEquals(reference, bytes)) {
+        return reference;
+      }
+    }
+  }
+
+  private String getId(int record) {
+    return new UUID(idsMost.getLong(record << 3), idsLeast.getLong(record << 3)).toString();
+  }
+
+  private boolean stringEquals(int reference, byte[] bytes) {
+    long start = stringOffsets.getLong(reference << 3);
+    long length = stringOffsets.getLong((reference + 1) << 3) - start;
+
+    if (length != bytes.length) {
+      return false;
+    }
+
+    for (int index = 0; index < bytes.length; index += 1) {
+      if (stringData.get((int) start + index) != bytes[index]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public static void write(Path path, long generation, InventorySnapshot previous, Map<BookKey, Book> books)
+      throws IOException {
+    int previousCount = previous == null ? 0 : previous.count;
+    int previousStringCount = previous == null ? 0 : previous.stringCount;
+    Map<Integer, Book> updatedRecords = new HashMap<>();
+    List<Book> newBooks = new ArrayList<>();
+
+    for (Book book : books.values()) {
+      int record = previous == null ? -1 : previous.findRecord(book.getTitle(), book.getAuthor());
+
+      if (record >= 0) {
+        updatedRecords.put(record, book);
+      } else {
+        newBooks.add(book);
+      }
+    }
+
+    int count = previousCount + newBooks.size();
+    int tableSize = Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1;
+    Map<String, Integer> dictionary = new HashMap<>();
+    List<byte[]> strings = new ArrayList<>();
+    List<Integer> stringHashList = new ArrayList<>();
+    int[] newReferences = new int[2 * newBooks.size()];
+
+    for (int index = 0; index < newReferences.length; index += 1) {
+      Book book = newBooks.get(index >> 1);
+      String value = (index & 1) == 0 ? book.getTitle() : book.getAuthor();
+      Integer reference = dictionary.get(value);
+
+      if (reference == null) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int previousReference = previous == null ? -1 : previous.findString(value, bytes);
+
+        if (previousReference >= 0) {
+          reference = previousReference;
+        } else {
+          reference = previousStringCount + strings.size();
+          strings.add(bytes);
+          stringHashList.add(value.hashCode());
+        }
+
+        dictionary.put(value, reference);
+      }
+
+      newReferences[index] = reference;
+    }
+
+    int stringCount = previousStringCount + strings.size();
+    int stringTableSize = Integer.highestOneBit(Math.max(1, stringCount) * 2 - 1) << 1;
+    int[] stringHashes = new int[stringCount];
+    int[] stringTable = new int[stringTableSize];
+
+    for (int reference = 0; reference < stringCount; reference += 1) {
+      stringHashes[reference] = reference < previousStringCount
+          ? previous.stringHashes.getInt(reference << 2)
+          : stringHashList.get(reference - previousStringCount);
+
+      int slot = mix(stringHashes[reference]) & (stringTableSize - 1);
+
+      while (stringTable[slot] != 0) {
+        slot = (slot + 1) & (stringTableSize - 1);
+      }
+
+      stringTable[slot] = reference + 1;
+    }
+
+    int[] hashes = new int[count];
+    int[] table = new int[tableSize];
+
+    for (int record = 0; record < count; record += 1) {
+      if (record < previousCount) {
+        hashes[record] = previous.hashes.getInt(record << 2);
+      } else {
+        Book book = newBooks.get(record - previousCount);
+        hashes[record] = BookKey.hash(book.getTitle(), book.getAuthor());
+      }
+
+      int slot = mix(hashes[record]) & (tableSize - 1);
+
+      while (table[slot] != 0) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+
+      table[slot] = record + 1;
+    }
+
+    long previousStringDataSize = previous == null ? 0 : previous.stringData.capacity();
+    long stringDataSize = previousStringDataSize;
+
+    for (byte[] bytes : strings) {
+      stringDataSize += bytes.length;
+    }
+
+    if (stringDataSize > Integer.MAX_VALUE) {
+      throw new IOException("The titles and authors of the library exceed the 2 GiB a snapshot can hold");
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+          1 << 16));
+      output.writeInt(MAGIC);
+      output.writeLong(generation);
+      output.writeInt(count);
+      output.writeInt(stringCount);
+      output.writeInt(tableSize);
+      output.writeLong(stringDataSize);
+      output.writeInt(stringTableSize);
+      output.write(new byte[HEADER_SIZE - output.size()]);
+
+      for (int hash : hashes) {
+        output.writeInt(hash);
+      }
+
+      for (int column = 1; column < COLUMN_COUNT; column += 1) {
+        for (int record = 0; record < count; record += 1) {
+          if (record < previousCount) {
+            switch (column) {
+              case 1 -> output.writeInt(previous.titles.getInt(record << 2));
+              case 2 -> output.writeInt(previous.authors.getInt(record << 2));
+              case 3 -> {
+                Book updated = updatedRecords.get(record);
+                output.writeInt(updated != null ? updated.getQuantity() : previous.quantities.getInt(record << 2));
+              }
+              case 4 -> output.writeLong(previous.idsMost.getLong(record << 3));
+              default -> output.writeLong(previous.idsLeast.getLong(record << 3));
+            }
+          } else {
+            int newIndex = record - previousCount;
+            Book book = newBooks.get(newIndex);
+
+            switch (column) {
+              case 1 -> output.writeInt(newReferences[2 * newIndex]);
+              case 2 -> output.writeInt(newReferences[2 * newIndex + 1]);
+              case 3 -> output.writeInt(book.getQuantity());
+              case 4 -> output.writeLong(UUID.fromString(book.getId()).getMostSignificantBits());
+              default -> output.writeLong(UUID.fromString(book.getId()).getLeastSignificantBits());
+            }
+          }
+        }
+      }
+
+      for (int slot : table) {
+        output.writeInt(slot);
+      }
+
+      for (int hash : stringHashes) {
+        output.writeInt(hash);
+      }
+
+      for (int slot : stringTable) {
+        output.writeInt(slot);
+      }
+
+      for (int reference = 0; reference < previousStringCount; reference += 1) {
+        output.writeLong(previous.stringOffsets.getLong(reference << 3));
+      }
+
+      long offset = previousStringDataSize;
+      output.writeLong(offset);
+
+      for (byte[] bytes : strings) {
+        offset += bytes.length;
+        output.writeLong(offset);
+      }
+
+      byte[] buffer = new byte[1 << 16];
+
+      for (long position = 0; position < previousStringDataSize; position += buffer.length) {
+        int length = (int) Math.min(buffer.length, previousStringDataSize - position);
+        previous.stringData.get((int) position, buffer, 0, length);
+        output.write(buffer, 0, length);
+      }
+
+      for (byte[] bytes : strings) {
+        output.write(bytes);
+      }
+
+      output.flush();
+      channel.force(true);
+    }
+  }
+
+  private static int mix(int hash) {
+    int mixed = hash * 0x9E3779B9;
+    return mixed ^ (mixed >>> 16);
+  }
+
+  private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("A library snapshot section is limited to 2 GiB, but one needs " + size + " bytes");
+    }
+
+    if (size < 0 || position + size > channel.size()) {
+      throw new IOException("Truncated library snapshot");
+    }
+
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+  }
+}
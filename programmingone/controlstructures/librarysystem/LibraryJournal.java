@@ -0,0 +1,344 @@
+package programmingone.controlstructures.librarysystem;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+public class LibraryJournal implements AutoCloseable {
+  public static final byte ADD = 1;
+  public static final byte BORROW = 2;
+  public static final byte RETURN = 3;
+
+  private static final String SNAPSHOT_NAME = "snapshot.dat";
+  private static final String LOG_PREFIX = "journal-";
+  private static final String LOG_SUFFIX = ".log";
+  private static final long SNAPSHOT_INTERVAL = 100_000;
+
+  public interface Update {
+    Book apply();
+  }
+
+  private final Path directory;
+  private final Map<BookKey, Book> library;
+  private final ReentrantReadWriteLock updateLock = new ReentrantReadWriteLock();
+  private final AtomicLong updatesSinceSnapshot = new AtomicLong();
+  private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+  private final InventorySnapshot base;
+  private final WriteAheadLog log;
+  private long generation;
+
+  private LibraryJournal(Path directory, Map<BookKey, Book> library, InventorySnapshot base, long generation)
+      throws IOException {
+    this.directory = directory;
+    this.library = library;
+    this.base = base;
+    this.generation = generation;
+    log = new WriteAheadLog(logPath(generation));
+  }
+
+  public static LibraryJournal open(Path directory, Map<BookKey, Book> library) throws IOException {
+    Files.createDirectories(directory);
+
+    Path snapshotPath = directory.resolve(SNAPSHOT_NAME);
+    InventorySnapshot base = Files.exists(snapshotPath) ? InventorySnapshot.open(snapshotPath) : null;
+    long generation = base == null ? 0 : base.getGeneration();
+
+    for (long logGeneration : listLogs(directory)) {
+      if (logGeneration >= generation) {
+        replay(directory.resolve(logName(logGeneration)), library, base);
+        generation = logGeneration;
+      }
+    }
+
+    return new LibraryJournal(directory, library, base, generation + 1);
+  }
+
+  public Book find(String title, String author) {
+    return find(library, base, title, author);
+  }
+
+  private static Book find(Map<BookKey, Book> library, InventorySnapshot base, String title, String author) {
+    Book book = library.get(BookKey.lookup(title, author));
+
+    if (book == null && base != null) {
+      Book loaded = base.find(title, author);
+
+      if (loaded != null) {
+        book = library.putIfAbsent(new BookKey(title, author), loaded);
+        return book == null ? loaded : book;
+      }
+    }
+
+    return book;
+  }
+
+  public Book update(byte operation, String title, String author, int quantity, Update update, Consumer<Book> undo)
+      throws IOException {
+    byte[] names = encodeNames(title, author);
+    Book book;
+    long sequence;
+
+    updateLock.readLock().lock();
+
+    try {
+      log.ensureWritable();
+      book = update.apply();
+
+      if (book == null) {
+        return null;
+      }
+
+      try {
+        sequence = append(operation, book, names, quantity);
+      } catch (IOException | RuntimeException e) {
+        // The log can still close or fail after ensureWritable, and a change it does not hold must not stay in memory.
+        undo.accept(book);
+        throw e;
+      }
+    } finally {
+      updateLock.readLock().unlock();
+    }
+
+    commit(sequence, 1);
+    return book;
+  }
+
+  public List<BookKey> addAll(Map<BookKey, Integer> quantities) throws IOException {
+    List<BookKey> keys = new ArrayList<>(quantities.keySet());
+    List<BookKey> rejected = new ArrayList<>();
+    byte[][] names = new byte[keys.size()][];
+    long sequence = 0;
+
+    for (int index = 0; index < names.length; index += 1) {
+      names[index] = encodeNames(keys.get(index).getTitle(), keys.get(index).getAuthor());
+    }
+
+    for (int index = 0; index < names.length; index += 1) {
+      BookKey key = keys.get(index);
+      int quantity = quantities.get(key);
+
+      updateLock.readLock().lock();
+
+      try {
+        log.ensureWritable();
+        Book book = find(key.getTitle(), key.getAuthor());
+        Book newBook = null;
+
+        if (book == null) {
+          newBook = new Book(key.getTitle(), key.getAuthor(), 0);
+          book = library.putIfAbsent(key, newBook);
+
+          if (book == null) {
+            book = newBook;
+          }
+        }
+
+        try {
+          book.addQuantity(quantity);
+        } catch (ArithmeticException e) {
+          rejected.add(key);
+          continue;
+        }
+
+        try {
+          sequence = append(ADD, book, names[index], quantity);
+        } catch (IOException | RuntimeException e) {
+          book.addQuantity(-quantity);
+
+          if (book == newBook) {
+            library.remove(key, newBook);
+          }
+
+          throw e;
+        }
+      } finally {
+        updateLock.readLock().unlock();
+      }
+    }
+
+    if (rejected.size() < names.length) {
+      commit(sequence, names.length - rejected.size());
+    }
+
+    return rejected;
+  }
+
+  private long append(byte operation, Book book, byte[] names, int quantity) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + names.length);
+
+    try (DataOutputStream record = new DataOutputStream(bytes)) {
+      record.writeByte(operation);
+      record.writeUTF(book.getId());
+      record.write(names);
+      record.writeInt(quantity);
+    }
+
+    return log.append(bytes.toByteArray());
+  }
+
+  // Encoded before any change is made, so a title or author too long for the log fails without changing memory.
+  private static byte[] encodeNames(String title, String author) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+    try (DataOutputStream names = new DataOutputStream(bytes)) {
+      names.writeUTF(title);
+      names.writeUTF(author);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  private void commit(long sequence, int updates) throws IOException {
+    log.awaitDurable(sequence);
+
+    if (updatesSinceSnapshot.addAndGet(updates) >= SNAPSHOT_INTERVAL && snapshotRunning.compareAndSet(false, true)) {
+      try {
+        snapshot();
+      } finally {
+        snapshotRunning.set(false);
+      }
+    }
+  }
+
+  public void snapshot() throws IOException {
+    Map<BookKey, Book> books;
+    long snapshotGeneration;
+
+    updateLock.writeLock().lock();
+
+    try {
+      snapshotGeneration = generation + 1;
+      log.rotate(logPath(snapshotGeneration));
+      generation = snapshotGeneration;
+      books = copyBooks(library);
+      updatesSinceSnapshot.set(0);
+    } finally {
+      updateLock.writeLock().unlock();
+    }
+
+    Path temporary = directory.resolve(SNAPSHOT_NAME + ".tmp");
+    InventorySnapshot.write(temporary, snapshotGeneration, base, books);
+    Files.move(temporary, directory.resolve(SNAPSHOT_NAME), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    WriteAheadLog.syncDirectory(directory);
+    deleteLogsBefore(directory, snapshotGeneration);
+  }
+
+  @Override
+  public void close() throws IOException {
+    snapshot();
+    log.close();
+  }
+
+  private Path logPath(long logGeneration) {
+    return directory.resolve(logName(logGeneration));
+  }
+
+  private static String logName(long logGeneration) {
+    return String.format("%s%019d%s", LOG_PREFIX, logGeneration, LOG_SUFFIX);
+  }
+
+  private static List<Long> listLogs(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(path -> path.getFileName().toString())
+          .filter(name -> name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX))
+          .map(name -> Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())))
+          .sorted()
+          .toList();
+    }
+  }
+
+  private static void deleteLogsBefore(Path directory, long generation) throws IOException {
+    for (long logGeneration : listLogs(directory)) {
+      if (logGeneration < generation) {
+        Files.deleteIfExists(directory.resolve(logName(logGeneration)));
+      }
+    }
+  }
+
+  private static Map<BookKey, Book> copyBooks(Map<BookKey, Book> library) {
+    Map<BookKey, Book> books = new HashMap<>(library.size() * 2);
+
+    for (Map.Entry<BookKey, Book> entry : library.entrySet()) {
+      Book book = entry.getValue();
+      books.put(entry.getKey(), new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getQuantity()));
+    }
+
+    return books;
+  }
+
+  private static void replay(Path path, Map<BookKey, Book> library, InventorySnapshot base) throws IOException {
+    CRC32C checksum = new CRC32C();
+
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      while (true) {
+        byte[] record;
+        int expectedChecksum;
+
+        try {
+          int length = input.readInt();
+
+          if (length <= 0 || length > 1 << 20) {
+            return;
+          }
+
+          expectedChecksum = input.readInt();
+          record = input.readNBytes(length);
+
+          if (record.length < length) {
+            return;
+          }
+        } catch (EOFException e) {
+          return;
+        }
+
+        checksum.reset();
+        checksum.update(record);
+
+        if ((int) checksum.getValue() != expectedChecksum) {
+          return;
+        }
+
+        apply(new DataInputStream(new ByteArrayInputStream(record)), library, base);
+      }
+    }
+  }
+
+  private static void apply(DataInputStream record, Map<BookKey, Book> library, InventorySnapshot base)
+      throws IOException {
+    byte operation = record.readByte();
+    String id = record.readUTF();
+    String title = record.readUTF();
+    String author = record.readUTF();
+    int quantity = record.readInt();
+    Book book = find(library, base, title, author);
+
+    if (book == null) {
+      book = new Book(id, title, author, 0);
+      library.put(new BookKey(title, author), book);
+    }
+
+    switch (operation) {
+      case ADD, RETURN -> book.addQuantity(quantity);
+      case BORROW -> book.addQuantity(-quantity);
+      default -> throw new IOException("Unknown journal operation " + operation);
+    }
+  }
+}
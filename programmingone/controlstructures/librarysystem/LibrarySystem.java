@@ -1,13 +1,27 @@
 package programmingone.controlstructures.librarysystem;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class LibrarySystem {
-  private static Map<String, Book> library = new HashMap<>();
+  private static final Map<BookKey, Book> library = new ConcurrentHashMap<>();
+  private static LibraryJournal journal;
 
   public static void main(String[] args) {
+    Path dataDirectory = Path.of(args.length > 0 ? args[0] : "library-data");
+
+    try {
+      journal = LibraryJournal.open(dataDirectory, library);
+    } catch (IOException e) {
+      System.out.println("The library data could not be loaded: " + e.getMessage());
+      return;
+    }
+
     Scanner scanner = new Scanner(System.in);
     int option = -1;
 
@@ -17,7 +31,7 @@ public class LibrarySystem {
       try {
         option = Integer.parseInt(scanner.nextLine());
 
-        while (option < 0 || option > 3) {
+        while (option < 0 || option > 4) {
           System.out.println("Invalid option. Please select a valid option.");
           displayMenuOptions();
           option = Integer.parseInt(scanner.nextLine());
@@ -27,6 +41,7 @@ public class LibrarySystem {
           case 1 -> addBooks(scanner);
           case 2 -> borrowBooks(scanner);
           case 3 -> returnBooks(scanner);
+          case 4 -> importBooks(scanner);
           case 0 -> System.out.println("You chose to exit. Bye for now!");
           default -> {
             System.out.println("Invalid option. Please try again.");
@@ -40,6 +55,12 @@ public class LibrarySystem {
     }
 
     scanner.close();
+
+    try {
+      journal.close();
+    } catch (IOException e) {
+      System.out.println("The library data could not be saved: " + e.getMessage());
+    }
   }
 
   private static void promptUserForOption() {
@@ -52,6 +73,7 @@ public class LibrarySystem {
     System.out.println("1. Add Books");
     System.out.println("2. Borrow Books");
     System.out.println("3. Return Books");
+    System.out.println("4. Import Books from CSV");
     System.out.println("0. Exit");
     System.out.println(divider);
     promptUserForOption();
@@ -60,16 +82,12 @@ public class LibrarySystem {
   private static void displayMenu() {
   System.out.println("======================================================");
   System.out.println("Welcome to UoPeople Demo Library System");
-  System.out.println("Please enter any of the corresponding options 1, 2, 3, or 0");
+  System.out.println("Please enter any of the corresponding options 1, 2, 3, 4, or 0");
   System.out.println("based on the operation you wish to carry out.");
   displayMenuOptions();
 
   }
 
-  private static String generateKey(String title, String author) {
-    return String.format("%s - %s", title, author);
-  }
-
   private static int scanQuantity(Scanner scanner, String quantityPrompt) {
     System.out.print(quantityPrompt);
     int quantity;
@@ -96,27 +114,45 @@ public class LibrarySystem {
 
   private static void addBooks(Scanner scanner) {
     System.out.print("Enter title:=>");
-    String title = scanner.nextLine();
+    String title = scanner.nextLine().trim();
 
     System.out.print("Enter author:=>");
-    String author = scanner.nextLine();
+    String author = scanner.nextLine().trim();
 
     int quantity = scanQuantity(scanner, "Enter quantity to add:=>");
 
-    String key = generateKey(title, author);
+    AtomicBoolean isNew = new AtomicBoolean();
 
-    if (library.containsKey(key)) {
-      Book book = library.get(key);
-      book.addQuantity(quantity);
+    try {
+      Book book = journal.update(LibraryJournal.ADD, title, author, quantity, () -> {
+        Book existing = journal.find(title, author);
 
-      System.out.println("Book quantity updated successfully.");
-      System.out.println(book.toString());
-    } else {
-      Book book = new Book(title, author, quantity);
-      library.put(key, book);
+        if (existing == null) {
+          Book newBook = new Book(title, author, quantity);
+          existing = library.putIfAbsent(new BookKey(title, author), newBook);
 
-      System.out.println("Book added successfully.");
+          if (existing == null) {
+            isNew.set(true);
+            return newBook;
+          }
+        }
+
+        existing.addQuantity(quantity);
+        return existing;
+      }, added -> {
+        if (isNew.get()) {
+          library.remove(new BookKey(title, author), added);
+        } else {
+          added.addQuantity(-quantity);
+        }
+      });
+
+      System.out.println(isNew.get() ? "Book added successfully." : "Book quantity updated successfully.");
       System.out.println(book.toString());
+    } catch (IOException e) {
+      System.out.println("The change could not be saved: " + e.getMessage());
+    } catch (ArithmeticException e) {
+      System.out.printf("The quantity is too large. A book can have at most %d copies.%n", Integer.MAX_VALUE);
     }
 
     System.out.println();
@@ -125,23 +161,28 @@ public class LibrarySystem {
 
   private static void borrowBooks(Scanner scanner) {
     System.out.print("Enter title:=>");
-    String title = scanner.nextLine();
+    String title = scanner.nextLine().trim();
 
     System.out.print("Enter author:=>");
-    String author = scanner.nextLine();
+    String author = scanner.nextLine().trim();
 
     int quantity = scanQuantity(scanner, "Enter quantity to borrow:=>");
 
-    String key = generateKey(title, author);
-
-    if (library.containsKey(key)) {
-      Book book = library.get(key);
+    Book book = journal.find(title, author);
 
-      if (book.borrowBook(quantity)) {
-        System.out.println("Book borrowed successfully.");
-        System.out.println(book.toString());
-      } else {
-        System.out.println("Not enough books available. Available quantity: " + book.getQuantity());
+    if (book != null) {
+      try {
+        Book borrowed = journal.update(LibraryJournal.BORROW, title, author, quantity,
+            () -> book.borrowBook(quantity) ? book : null, unsaved -> unsaved.returnBook(quantity));
+
+        if (borrowed != null) {
+          System.out.println("Book borrowed successfully.");
+          System.out.println(book.toString());
+        } else {
+          System.out.println("Not enough books available. Available quantity: " + book.getQuantity());
+        }
+      } catch (IOException e) {
+        System.out.println("The change could not be saved: " + e.getMessage());
       }
     } else {
       System.out.println("Book not found in the library");
@@ -153,21 +194,29 @@ public class LibrarySystem {
 
   private static void returnBooks(Scanner scanner) {
     System.out.print("Enter title:=>");
-    String title = scanner.nextLine();
+    String title = scanner.nextLine().trim();
 
     System.out.print("Enter author:=>");
-    String author = scanner.nextLine();
+    String author = scanner.nextLine().trim();
 
     int quantity = scanQuantity(scanner, "Enter quantity to return:=>");
 
-    String key = generateKey(title, author);
+    Book book = journal.find(title, author);
 
-    if (library.containsKey(key)) {
-      Book book = library.get(key);
-      book.returnBook(quantity);
+    if (book != null) {
+      try {
+        journal.update(LibraryJournal.RETURN, title, author, quantity, () -> {
+          book.returnBook(quantity);
+          return book;
+        }, unsaved -> unsaved.addQuantity(-quantity));
 
-      System.out.println("Book returned successfully.");
-      System.out.println(book.toString());
+        System.out.println("Book returned successfully.");
+        System.out.println(book.toString());
+      } catch (IOException e) {
+        System.out.println("The change could not be saved: " + e.getMessage());
+      } catch (ArithmeticException e) {
+        System.out.printf("The quantity is too large. A book can have at most %d copies.%n", Integer.MAX_VALUE);
+      }
     } else {
       System.out.println("This book does not belong to our library.");
     }
@@ -175,5 +224,33 @@ public class LibrarySystem {
     System.out.println();
     displayMenu();
   }
-}
 
+  private static void importBooks(Scanner scanner) {
+    System.out.println("Each line of the CSV file holds one title,author,quantity row.");
+    System.out.println("Quoted fields may contain commas and \"\" quotes, but not line breaks.");
+    System.out.print("Enter the path of the CSV file:=>");
+    String fileName = scanner.nextLine().trim();
+
+    try {
+      CatalogImporter importer = new CatalogImporter(Runtime.getRuntime().availableProcessors());
+      CatalogImporter.Result result = importer.importFile(Path.of(fileName), journal);
+
+      System.out.println("Books imported successfully.");
+      System.out.printf("%d rows, %d titles in %.2f s (%.0f rows/sec)%n", result.getRows(), result.getTitles(),
+          result.getSeconds(), result.getRowsPerSecond());
+
+      if (result.getInvalidRows() > 0) {
+        System.out.printf("%d invalid rows were skipped, the first one being: %s%n", result.getInvalidRows(),
+            result.getFirstInvalidRow());
+      }
+    } catch (IOException | InvalidPathException e) {
+      System.out.println("The books could not be imported: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.out.println("The import was interrupted.");
+    }
+
+    System.out.println();
+    displayMenu();
+  }
+}
@@ -0,0 +1,207 @@
+package programmingone.controlstructures.librarysystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+public class WriteAheadLog implements AutoCloseable {
+  private final Object lock = new Object();
+  private final Thread flusher;
+  private FileChannel channel;
+  private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+  private long appendedSequence = 0;
+  private long durableSequence = 0;
+  private IOException failure = null;
+  private boolean closed = false;
+
+  public WriteAheadLog(Path path) throws IOException {
+    channel = open(path);
+    flusher = new Thread(this::flushLoop, "library-wal-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  public void ensureWritable() throws IOException {
+    synchronized (lock) {
+      if (closed || failure != null) {
+        throw new IOException("The log is closed", failure);
+      }
+    }
+  }
+
+  public long append(byte[] record) throws IOException {
+    CRC32C checksum = new CRC32C();
+    checksum.update(record);
+
+    synchronized (lock) {
+      if (closed || failure != null) {
+        throw new IOException("The log is closed", failure);
+      }
+
+      ensureCapacity(8 + record.length);
+      pending.putInt(record.length);
+      pending.putInt((int) checksum.getValue());
+      pending.put(record);
+      appendedSequence += 1;
+      lock.notifyAll();
+      return appendedSequence;
+    }
+  }
+
+  public void awaitDurable(long sequence) throws IOException {
+    synchronized (lock) {
+      while (durableSequence < sequence && failure == null) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for the log", e);
+        }
+      }
+
+      if (durableSequence < sequence) {
+        throw new IOException("The log could not be written", failure);
+      }
+    }
+  }
+
+  public void rotate(Path path) throws IOException {
+    FileChannel next = open(path);
+    FileChannel previous;
+
+    synchronized (lock) {
+      long sequence = appendedSequence;
+      lock.notifyAll();
+
+      while (durableSequence < sequence && failure == null) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          next.close();
+          throw new IOException("Interrupted while rotating the log", e);
+        }
+      }
+
+      if (failure != null) {
+        next.close();
+        throw new IOException("The log could not be written", failure);
+      }
+
+      previous = channel;
+      channel = next;
+    }
+
+    previous.close();
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    channel.close();
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void flushLoop() {
+    ByteBuffer batch = ByteBuffer.allocate(pending.capacity());
+
+    while (true) {
+      FileChannel target;
+      long sequence;
+
+      synchronized (lock) {
+        while (pending.position() == 0 && !closed) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            failure = new IOException("The log flusher was interrupted", e);
+            lock.notifyAll();
+            return;
+          }
+        }
+
+        if (pending.position() == 0) {
+          return;
+        }
+
+        ByteBuffer swap = pending;
+        pending = batch.capacity() >= swap.capacity() ? batch.clear() : ByteBuffer.allocate(swap.capacity());
+        batch = swap;
+        target = channel;
+        sequence = appendedSequence;
+      }
+
+      try {
+        batch.flip();
+
+        while (batch.hasRemaining()) {
+          target.write(batch);
+        }
+
+        target.force(false);
+        batch.clear();
+      } catch (IOException e) {
+        synchronized (lock) {
+          failure = e;
+          lock.notifyAll();
+        }
+
+        return;
+      }
+
+      synchronized (lock) {
+        durableSequence = sequence;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private void ensureCapacity(int length) {
+    if (pending.remaining() >= length) {
+      return;
+    }
+
+    ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length));
+    larger.put(pending.flip());
+    pending = larger;
+  }
+
+  private static FileChannel open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+
+    try {
+      syncDirectory(path.toAbsolutePath().getParent());
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    return channel;
+  }
+
+  static void syncDirectory(Path directory) throws IOException {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (AccessDeniedException e) {
+      // Windows cannot open a directory as a channel; NTFS journals renames and new entries itself.
+    }
+  }
+}